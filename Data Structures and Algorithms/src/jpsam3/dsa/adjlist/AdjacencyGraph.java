@@ -0,0 +1,32 @@
+package jpsam3.dsa.adjlist;
+
+/**
+ * Read-only undirected graph with dense int vertex ids 0 .. vertexCount() - 1, each named, with every edge listed from
+ * both ends. The traversal engines (ParallelBFS, MultiSourceBFS, ConnectedComponents, TwoColouring) only need this,
+ * so they run unchanged on plain CSR arrays (CompactGraph), compressed lists (CompressedGraph) or a memory-mapped
+ * file (MappedGraph).
+ */
+public interface AdjacencyGraph
+{
+	int vertexCount();
+
+	/**
+	 * @return Total length of all neighbour lists, i.e. twice the number of edges (self-loops count once).
+	 */
+	long adjacencyCount();
+
+	int degree(int v);
+
+	String name(int v);
+
+	/**
+	 * @return Id of the named vertex, or -1 if there is none.
+	 */
+	int id(String name);
+
+	/**
+	 * @return A new cursor over this graph's neighbour lists. Cursors are cheap but not thread-safe, so each thread
+	 * (or fork-join leaf) should use its own and reset() it for every vertex.
+	 */
+	NeighbourIterator neighbourIterator();
+}
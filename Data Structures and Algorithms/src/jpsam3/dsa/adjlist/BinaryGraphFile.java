@@ -0,0 +1,189 @@
+package jpsam3.dsa.adjlist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Binary graph file, written once from a CompactGraph (or any AdjacencyGraph) and opened by memory-mapping it as a
+ * MappedGraph, with nothing to parse or rebuild at startup.
+ *
+ * Layout (big-endian, every section starts on an 8-byte boundary):
+ *     header       [magic:4][version:4][vertexCount:4][unused:4][adjacencyCount:8]
+ *                  [nameOffsetsPos:8][nameBytesPos:8][adjOffsetsPos:8][adjBytesPos:8][fileLength:8]
+ *     nameOffsets  vertexCount + 1 longs; name v is nameBytes[nameOffsets[v] .. nameOffsets[v + 1])
+ *     nameBytes    UTF-8 names, in id (= sorted name) order, so a name can be found by binary search
+ *     adjOffsets   vertexCount + 1 longs into adjBytes
+ *     adjBytes     per vertex: [degree][first neighbour][gap]... as unsigned LEB128 varints; the lists are sorted, so
+ *                  gaps are small and most take a single byte
+ */
+public class BinaryGraphFile
+{
+	static final int MAGIC        = 0x4A475246;			// "JGRF"
+	static final int VERSION      = 1;
+	static final int HEADER_BYTES = 64;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes graph to path, replacing anything there. The neighbour lists are read twice, once to size them.
+	 */
+	public static void write(AdjacencyGraph graph, String path) throws IOException
+	{
+		int n = graph.vertexCount();
+		NeighbourIterator neighbours = graph.neighbourIterator();
+
+		byte[][] names = new byte[n][];
+		long nameBytes = 0;
+		for (int v = 0; v < n; v++)
+		{
+			names[v] = graph.name(v).getBytes(UTF8);
+			nameBytes += names[v].length;
+		}
+
+		long adjBytes = 0;
+		for (int v = 0; v < n; v++)
+			adjBytes += listBytes(graph, neighbours, v);
+
+		long nameOffsetsPos = HEADER_BYTES;
+		long nameBytesPos   = nameOffsetsPos + 8L * (n + 1);
+		long adjOffsetsPos  = align(nameBytesPos + nameBytes);
+		long adjBytesPos    = adjOffsetsPos + 8L * (n + 1);
+		long fileLength     = adjBytesPos + adjBytes;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(0);
+			out.writeLong(graph.adjacencyCount());
+			out.writeLong(nameOffsetsPos);
+			out.writeLong(nameBytesPos);
+			out.writeLong(adjOffsetsPos);
+			out.writeLong(adjBytesPos);
+			out.writeLong(fileLength);
+
+			long offset = 0;
+			for (int v = 0; v < n; v++)
+			{
+				out.writeLong(offset);
+				offset += names[v].length;
+			}
+			out.writeLong(offset);
+			for (byte[] name : names)
+				out.write(name);
+			pad(out, (int) (adjOffsetsPos - nameBytesPos - nameBytes));
+
+			offset = 0;
+			for (int v = 0; v < n; v++)
+			{
+				out.writeLong(offset);
+				offset += listBytes(graph, neighbours, v);
+			}
+			out.writeLong(offset);
+
+			for (int v = 0; v < n; v++)
+			{
+				writeVarint(out, graph.degree(v));
+				neighbours.reset(v);
+				for (int u, prev = 0; (u = neighbours.next()) >= 0; prev = u)
+					writeVarint(out, u - prev);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads a text edge list with EdgeListLoader and writes it out as a binary graph file.
+	 * @param separator Separator between the names on a line, " : " for Graph files or " " for bipartite ones.
+	 */
+	public static void convert(String textPath, String separator, String binaryPath) throws IOException
+	{
+		write(EdgeListLoader.load(textPath, separator), binaryPath);
+	}
+
+	/**
+	 * @see MappedGraph#open(String)
+	 */
+	public static MappedGraph open(String path) throws IOException
+	{
+		return MappedGraph.open(path);
+	}
+
+	/**
+	 * @return Encoded size of v's neighbour list.
+	 */
+	private static long listBytes(AdjacencyGraph graph, NeighbourIterator neighbours, int v)
+	{
+		long bytes = varintBytes(graph.degree(v));
+		neighbours.reset(v);
+		for (int u, prev = 0; (u = neighbours.next()) >= 0; prev = u)
+			bytes += varintBytes(u - prev);
+		return bytes;
+	}
+
+	static int varintBytes(int value)
+	{
+		int bytes = 1;
+		while ((value >>>= 7) != 0)
+			bytes++;
+		return bytes;
+	}
+
+	private static void writeVarint(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static long align(long pos)
+	{
+		return (pos + 7) & ~7L;
+	}
+
+	private static void pad(DataOutputStream out, int bytes) throws IOException
+	{
+		for (int i = 0; i < bytes; i++)
+			out.writeByte(0);
+	}
+
+	/* Some tests: converts a text edge list, then opens it and times the open. Arguments: text file, separator. */
+	public static void main(String[] args) throws IOException
+	{
+		String textPath = args.length > 0 ? args[0] : "names.txt";
+		String separator = args.length > 1 ? args[1] : " : ";
+		String binaryPath = textPath + ".bin";
+
+		long start = System.nanoTime();
+		CompactGraph graph = EdgeListLoader.load(textPath, separator);
+		long loadTime = System.nanoTime() - start;
+		write(graph, binaryPath);
+
+		start = System.nanoTime();
+		MappedGraph mapped = open(binaryPath);
+		long openTime = System.nanoTime() - start;
+
+		boolean ok = mapped.vertexCount() == graph.vertexCount() && mapped.adjacencyCount() == graph.adjacencyCount();
+		for (int v = 0; v < graph.vertexCount() && ok; v++)
+		{
+			int[] neighbours = mapped.neighbours(v);
+			ok = mapped.id(graph.name(v)) == v && mapped.name(v).equals(graph.name(v))
+					&& neighbours.length == graph.degree(v);
+			for (int i = 0; i < neighbours.length && ok; i++)
+				ok = neighbours[i] == graph.target(graph.offset(v) + i);
+		}
+
+		System.out.printf("text load %.1f ms, binary open %.3f ms, %s; %d vertices, %d adjacency entries in %d bytes%n",
+				loadTime / 1e6, openTime / 1e6, ok ? "contents match" : "MISMATCH", mapped.vertexCount(),
+				mapped.adjacencyCount(), mapped.adjacencyBytes());
+		mapped.close();
+	}
+}
@@ -0,0 +1,624 @@
+package jpsam3.dsa.adjlist;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable undirected graph in compressed sparse row (CSR) form. Vertex names are interned once into int ids, given in
+ * sorted name order so ids iterate the same way the TreeMap-based graphs do. The neighbours of vertex v are
+ * targets[offsets[v] .. offsets[v + 1]), sorted by id and without duplicates.
+ *
+ * Each undirected edge is stored once from each end, so adjacency costs 8 bytes per edge (plus 4 per vertex for the
+ * offsets), against two red-black tree nodes per edge in Graph.
+ *
+ * Build one with a Builder from the same " : " edge lines Graph.handleLine() takes, or with readFile().
+ */
+public class CompactGraph implements AdjacencyGraph
+{
+	private static final int SORT_WORK = 1 << 16;		// Adjacency entries per fork-join leaf in Builder.build(pool).
+	private static final int COMPRESS_PASSES = 8;		// Passes over the edge buffer in Builder.buildCompressed().
+
+	final NameTable ids;				// Name -> id.
+	final String[]  names;				// Id -> name.
+	final int[]     offsets;			// Vertex count + 1 entries.
+	final int[]     targets;
+
+	private CompactGraph(NameTable ids, String[] names, int[] offsets, int[] targets)
+	{
+		this.ids = ids;
+		this.names = names;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/*
+	 * Reads an edge list file in the same format as Graph.readFile().
+	 */
+	public static CompactGraph readFile(String filePath) throws IOException
+	{
+		Builder builder = new Builder();
+		BufferedReader in = new BufferedReader(new FileReader(filePath));
+		String line;
+
+		try {
+			while ((line = in.readLine()) != null)
+				builder.handleLine(line);
+		} finally {
+			in.close();
+		}
+		return builder.build();
+	}
+
+	@Override
+	public int vertexCount()
+	{
+		return names.length;
+	}
+
+	@Override
+	public long adjacencyCount()
+	{
+		return targets.length;
+	}
+
+	@Override
+	public int id(String name)
+	{
+		return ids.get(name);
+	}
+
+	@Override
+	public String name(int v)
+	{
+		return names[v];
+	}
+
+	@Override
+	public int degree(int v)
+	{
+		return offsets[v + 1] - offsets[v];
+	}
+
+	@Override
+	public NeighbourIterator neighbourIterator()
+	{
+		return new NeighbourIterator() {
+			private int i, end;
+
+			@Override
+			public void reset(int v)
+			{
+				i = offsets[v];
+				end = offsets[v + 1];
+			}
+
+			@Override
+			public int next()
+			{
+				return i < end ? targets[i++] : -1;
+			}
+		};
+	}
+
+	/**
+	 * @return Index into the adjacency array of v's first neighbour; its neighbours run up to offset(v + 1).
+	 */
+	public int offset(int v)
+	{
+		return offsets[v];
+	}
+
+	/**
+	 * @return Vertex id at the given index of the adjacency array.
+	 */
+	public int target(int i)
+	{
+		return targets[i];
+	}
+
+	/**
+	 * Binary searches v's sorted neighbour list.
+	 */
+	public boolean hasEdge(int u, int v)
+	{
+		return Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0;
+	}
+
+	/*
+	 * Bytes held by the adjacency arrays (not counting the name dictionary).
+	 */
+	public long adjacencyBytes()
+	{
+		return 4L * (offsets.length + targets.length);
+	}
+
+	/*
+	 * Prints each vertex followed by its neighbours, in the same format as Graph.printGraph().
+	 */
+	public void printGraph()
+	{
+		for (int v = 0; v < names.length; v++)
+		{
+			System.out.printf("%s -->", names[v]);
+			for (int i = offsets[v]; i < offsets[v + 1]; i++)
+				System.out.printf("   %s", names[targets[i]]);
+			System.out.printf("\n");
+		}
+	}
+
+	/**
+	 * Collects an edge stream into two flat int arrays (8 bytes per edge), then turns it into CSR form in build().
+	 * Duplicate edges are fine and are removed when the graph is built.
+	 *
+	 * A builder can be kept as the store of a graph that keeps growing: build() folds the edges added since the last
+	 * build into the graph it returned then, and drops them from the edge buffer, so between builds the edges are held
+	 * once, in CSR form. Ids returned by addVertex() are the builder's own, in order of first appearance, and never
+	 * change, so they can index side tables (e.g. a union-find) across builds; build() renumbers into name order.
+	 * buildCompressed() does the same into a CompressedGraph, without going through CSR.
+	 *
+	 * A builder can also start from a graph opened some other way, e.g. a MappedGraph. That graph is served as it is by
+	 * graph() until something is added, and its ids are the builder's ids for its vertices.
+	 */
+	public static class Builder
+	{
+		final NameTable ids = new NameTable();	// Name -> builder id.
+		private int[] from = new int[16];
+		private int[] to   = new int[16];
+		private int edgeCount;
+
+		private AdjacencyGraph built;			// Last graph built, or the base graph the builder started from; holds every
+												// edge added before then.
+		private int[] builtIds;					// Vertex id in built -> builder id; null while built is the base graph.
+		private boolean baseNamed;				// Whether the base graph's names have been put in ids yet.
+
+		public Builder()
+		{
+		}
+
+		/**
+		 * Starts from base, which stays the graph's only copy until the first build. Its names are only read into the
+		 * builder when a vertex that isn't in base is added.
+		 */
+		public Builder(AdjacencyGraph base)
+		{
+			built = base;
+		}
+
+		/**
+		 * @return Id of the named vertex, adding it (with no edges yet) if it's new.
+		 */
+		public int addVertex(String name)
+		{
+			if (namesInBase())
+			{
+				int id = built.id(name);
+				if (id >= 0)
+					return id;
+				nameBase();
+			}
+			return ids.intern(name);
+		}
+
+		/**
+		 * @return Id addVertex() gave the named vertex, or -1 if it was never added.
+		 */
+		public int id(String name)
+		{
+			return namesInBase() ? built.id(name) : ids.get(name);
+		}
+
+		/**
+		 * @return Number of vertices added so far.
+		 */
+		public int vertexCount()
+		{
+			return namesInBase() ? built.vertexCount() : ids.size();
+		}
+
+		/**
+		 * @return Every vertex name, indexed by builder id.
+		 */
+		String[] names()
+		{
+			if (!namesInBase())
+				return ids.names();
+
+			String[] names = new String[built.vertexCount()];
+			for (int v = 0; v < names.length; v++)
+				names[v] = built.name(v);
+			return names;
+		}
+
+		/**
+		 * @param v Vertex id in the graph last returned by graph(), build() or buildCompressed(), with nothing added since.
+		 * @return Id addVertex() gave v.
+		 */
+		public int builderId(int v)
+		{
+			return builtIds == null ? v : builtIds[v];
+		}
+
+		/**
+		 * True while the base graph's names are only in the base graph, so it answers name lookups.
+		 */
+		private boolean namesInBase()
+		{
+			return built != null && builtIds == null && !baseNamed;
+		}
+
+		/**
+		 * Gives the base graph's vertices their base ids in ids, ahead of any vertex added since.
+		 */
+		private void nameBase()
+		{
+			for (int v = 0; v < built.vertexCount(); v++)
+				ids.intern(built.name(v));
+			baseNamed = true;
+		}
+
+		public void addEdge(String a, String b)
+		{
+			addEdge(addVertex(a), addVertex(b));
+		}
+
+		/**
+		 * @param a Id previously returned by addVertex().
+		 * @param b Id previously returned by addVertex().
+		 */
+		public void addEdge(int a, int b)
+		{
+			if (edgeCount == from.length)
+			{
+				from = Arrays.copyOf(from, edgeCount * 2);
+				to   = Arrays.copyOf(to, edgeCount * 2);
+			}
+			from[edgeCount] = a;
+			to[edgeCount++] = b;
+		}
+
+		/**
+		 * Bulk version of addEdge(int, int) for edges numbered in some other id space.
+		 * @param remap Maps the ids used in from/to onto ids returned by addVertex().
+		 */
+		void addEdges(int[] from, int[] to, int count, int[] remap)
+		{
+			if (edgeCount + count > this.from.length)
+			{
+				int capacity = Math.max(edgeCount + count, this.from.length * 2);
+				this.from = Arrays.copyOf(this.from, capacity);
+				this.to   = Arrays.copyOf(this.to, capacity);
+			}
+			for (int e = 0; e < count; e++)
+			{
+				this.from[edgeCount] = remap[from[e]];
+				this.to[edgeCount++] = remap[to[e]];
+			}
+		}
+
+		/*
+		 * Takes a "name : name" line, as in Graph.handleLine(), without going through a regex split.
+		 */
+		public void handleLine(String readLine)
+		{
+			int sep = readLine.indexOf(" : ");
+			if (sep < 0)
+				return;
+
+			addEdge(readLine.substring(0, sep), readLine.substring(sep + 3));
+		}
+
+		/**
+		 * @return The graph as it stands: the last graph built (or the base graph) if nothing was added since, else a new
+		 * one of the same kind, from buildCompressed() if the last was a CompressedGraph and build() otherwise.
+		 */
+		public AdjacencyGraph graph()
+		{
+			return graph(null);
+		}
+
+		/**
+		 * Same as graph(), with a CSR build done on pool as in build(ForkJoinPool).
+		 */
+		public AdjacencyGraph graph(ForkJoinPool pool)
+		{
+			if (built != null && edgeCount == 0 && vertexCount() == built.vertexCount())
+				return built;
+			return built instanceof CompressedGraph ? buildCompressed() : build(pool);
+		}
+
+		/**
+		 * Renumbers the vertices into sorted name order and lays out the last graph built (or the base graph) plus every
+		 * edge added since as CSR. Returns the last graph again, without copying, if nothing was added since.
+		 */
+		public CompactGraph build()
+		{
+			return build(null);
+		}
+
+		/**
+		 * Same as build(), with the neighbour lists sorted and deduplicated in parallel on pool (on the calling thread if
+		 * pool is null). Sorting is the only superlinear step; the name sort is O(V log V) on the calling thread and the
+		 * rest are linear passes over the edges.
+		 */
+		public CompactGraph build(ForkJoinPool pool)
+		{
+			if (namesInBase())
+				nameBase();
+			int n = ids.size();
+			int builtCount = built == null ? 0 : built.vertexCount();
+			if (built instanceof CompactGraph && edgeCount == 0 && builtCount == n)
+				return (CompactGraph) built;
+
+			String[] names = ids.names();
+			NameTable sortedIds = new NameTable(n);
+			int[] remap = sortNames(names, sortedIds);
+			int[] builtRemap = builtRemap(remap);
+
+			int[] offsets = new int[n + 1];
+			for (int v = 0; v < builtCount; v++)
+				offsets[builtRemap[v] + 1] += built.degree(v);
+			for (int e = 0; e < edgeCount; e++)
+			{
+				offsets[remap[from[e]] + 1]++;
+				offsets[remap[to[e]] + 1]++;
+			}
+			for (int v = 0; v < n; v++)
+				offsets[v + 1] += offsets[v];
+
+			int[] fill = Arrays.copyOf(offsets, n);
+			int[] targets = new int[offsets[n]];
+			NeighbourIterator neighbours = built == null ? null : built.neighbourIterator();
+			for (int v = 0; v < builtCount; v++)
+			{
+				int a = builtRemap[v];
+				neighbours.reset(v);
+				for (int u; (u = neighbours.next()) >= 0; )
+					targets[fill[a]++] = builtRemap[u];
+			}
+			for (int e = 0; e < edgeCount; e++)
+			{
+				int a = remap[from[e]], b = remap[to[e]];
+				targets[fill[a]++] = b;
+				targets[fill[b]++] = a;
+			}
+
+			// Sort each neighbour list and squeeze out its duplicates in place, then slide the lists down over the gaps.
+			int[] degrees = new int[n];
+			if (pool == null)
+				sortLists(offsets, targets, degrees, 0, n);
+			else
+				pool.invoke(new SortTask(offsets, targets, degrees, 0, n));
+
+			int write = 0;
+			for (int v = 0; v < n; v++)
+			{
+				int start = offsets[v];
+				offsets[v] = write;
+				System.arraycopy(targets, start, targets, write, degrees[v]);
+				write += degrees[v];
+			}
+			offsets[n] = write;
+
+			if (write < targets.length)
+				targets = Arrays.copyOf(targets, write);
+
+			CompactGraph graph = new CompactGraph(sortedIds, names, offsets, targets);
+			keep(graph, remap);
+			return graph;
+		}
+
+		/**
+		 * Same as build(), but encodes the lists straight into a CompressedGraph, never holding them as CSR. Vertices are
+		 * done in blocks of consecutive ids: each block gathers its lists into a scratch array from the last graph built
+		 * and one pass over the edge buffer, then sorts, dedupes and encodes them one vertex at a time. There are about
+		 * COMPRESS_PASSES blocks, so besides the edge buffer and the result the only big array is the scratch, roughly
+		 * 1 / COMPRESS_PASSES the size of a CSR target array.
+		 * @throws IllegalArgumentException If the encoded lists would not fit in one array (over 2 GB).
+		 */
+		public CompressedGraph buildCompressed()
+		{
+			if (namesInBase())
+				nameBase();
+			int n = ids.size();
+			int builtCount = built == null ? 0 : built.vertexCount();
+			if (built instanceof CompressedGraph && edgeCount == 0 && builtCount == n)
+				return (CompressedGraph) built;
+
+			String[] names = ids.names();
+			NameTable sortedIds = new NameTable(n);
+			int[] remap = sortNames(names, sortedIds);
+			int[] builtRemap = builtRemap(remap);
+
+			int[] source = new int[n];						// New id -> vertex id in built, -1 if it's not there.
+			int[] degrees = new int[n];						// New id -> list length before deduplication.
+			Arrays.fill(source, -1);
+			long total = 0;
+			for (int v = 0; v < builtCount; v++)
+			{
+				source[builtRemap[v]] = v;
+				degrees[builtRemap[v]] = built.degree(v);
+				total += degrees[builtRemap[v]];
+			}
+			for (int e = 0; e < edgeCount; e++)
+			{
+				degrees[remap[from[e]]]++;
+				degrees[remap[to[e]]]++;
+			}
+			total += 2L * edgeCount;
+
+			long blockSize = Math.max(1 << 16, total / COMPRESS_PASSES + 1);
+			int[] scratch = new int[0];
+			int[] offsets = new int[n];
+			byte[] data = new byte[(int) Math.min(Integer.MAX_VALUE - 8, n + total)];	// Grown as needed.
+			int pos = 0;
+			long adjacency = 0;
+			NeighbourIterator neighbours = built == null ? null : built.neighbourIterator();
+
+			for (int lo = 0, hi; lo < n; lo = hi)
+			{
+				long size = degrees[lo];
+				for (hi = lo + 1; hi < n && size + degrees[hi] <= blockSize; hi++)
+					size += degrees[hi];
+				if (scratch.length < size)
+					scratch = new int[(int) Math.max(size, Math.min(blockSize, total))];
+
+				int[] fill = new int[hi - lo];				// Block vertex -> next free slot of its list in scratch.
+				for (int w = lo + 1; w < hi; w++)
+					fill[w - lo] = fill[w - lo - 1] + degrees[w - 1];
+				for (int w = lo; w < hi; w++)
+				{
+					if (source[w] < 0)
+						continue;
+					neighbours.reset(source[w]);
+					for (int u; (u = neighbours.next()) >= 0; )
+						scratch[fill[w - lo]++] = builtRemap[u];
+				}
+				for (int e = 0; e < edgeCount; e++)
+				{
+					int a = remap[from[e]], b = remap[to[e]];
+					if (a >= lo && a < hi)
+						scratch[fill[a - lo]++] = b;
+					if (b >= lo && b < hi)
+						scratch[fill[b - lo]++] = a;
+				}
+
+				for (int w = lo, start = 0; w < hi; start = fill[w - lo], w++)
+				{
+					int end = fill[w - lo], write = start;
+					Arrays.sort(scratch, start, end);
+					for (int i = start; i < end; i++)
+						if (i == start || scratch[i] != scratch[i - 1])
+							scratch[write++] = scratch[i];
+
+					long needed = pos + 5L * (write - start + 1);	// A varint takes at most 5 bytes.
+					if (needed > data.length)
+					{
+						if (needed > Integer.MAX_VALUE - 8)
+							throw new IllegalArgumentException("Compressed adjacency too big for one array: over "
+									+ pos + " bytes");
+						data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8,
+								Math.max(needed, data.length + (data.length >> 1))));
+					}
+
+					offsets[w] = pos;
+					pos = CompressedGraph.writeVarint(data, pos, write - start);
+					for (int i = start, prev = 0; i < write; prev = scratch[i++])
+						pos = CompressedGraph.writeVarint(data, pos, scratch[i] - prev);
+					adjacency += write - start;
+				}
+			}
+			if (pos < data.length)
+				data = Arrays.copyOf(data, pos);
+
+			CompressedGraph graph = new CompressedGraph(sortedIds, names, offsets, data, adjacency);
+			keep(graph, remap);
+			return graph;
+		}
+
+		/**
+		 * Sorts names (indexed by builder id) into name order and interns them in that order into sortedIds.
+		 * @return Builder id -> new vertex id.
+		 */
+		private int[] sortNames(String[] names, NameTable sortedIds)
+		{
+			Arrays.sort(names);
+			for (String name : names)
+				sortedIds.intern(name);
+
+			int[] remap = new int[ids.size()];
+			for (int v = 0; v < remap.length; v++)
+				remap[v] = sortedIds.get(ids.name(v));
+			return remap;
+		}
+
+		/**
+		 * @return Vertex id in built -> new vertex id.
+		 */
+		private int[] builtRemap(int[] remap)
+		{
+			int[] builtRemap = new int[built == null ? 0 : built.vertexCount()];
+			for (int v = 0; v < builtRemap.length; v++)
+				builtRemap[v] = remap[builderId(v)];
+			return builtRemap;
+		}
+
+		/**
+		 * Makes graph, just built with the given renumbering, the one later builds start from, and empties the edge
+		 * buffer, since its edges live in graph from now on.
+		 */
+		private void keep(AdjacencyGraph graph, int[] remap)
+		{
+			builtIds = new int[remap.length];
+			for (int v = 0; v < remap.length; v++)
+				builtIds[remap[v]] = v;
+			built = graph;
+			from = new int[16];
+			to   = new int[16];
+			edgeCount = 0;
+		}
+	}
+
+	/**
+	 * Sorts the neighbour lists of vertices [lo, hi), moving each list's distinct entries to its start and recording how
+	 * many there are in degrees.
+	 */
+	private static void sortLists(int[] offsets, int[] targets, int[] degrees, int lo, int hi)
+	{
+		for (int v = lo; v < hi; v++)
+		{
+			int start = offsets[v], end = offsets[v + 1], write = start;
+			Arrays.sort(targets, start, end);
+			for (int i = start; i < end; i++)
+				if (i == start || targets[i] != targets[i - 1])
+					targets[write++] = targets[i];
+			degrees[v] = write - start;
+		}
+	}
+
+	/**
+	 * Runs sortLists() over a range of vertices, splitting it while it holds more than SORT_WORK adjacency entries.
+	 * Vertices never share a list, so tasks need no synchronisation; the join publishes them.
+	 */
+	private static class SortTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int[] offsets, targets, degrees;
+		private final int   lo, hi;
+
+		private SortTask(int[] offsets, int[] targets, int[] degrees, int lo, int hi)
+		{
+			this.offsets = offsets;
+			this.targets = targets;
+			this.degrees = degrees;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (hi - lo > 1 && offsets[hi] - offsets[lo] > SORT_WORK)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new SortTask(offsets, targets, degrees, lo, mid), new SortTask(offsets, targets, degrees, mid, hi));
+			} else {
+				sortLists(offsets, targets, degrees, lo, hi);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		CompactGraph testG;
+
+		testG = readFile("names.txt");
+		testG.printGraph();
+		System.out.printf("\n%d vertices, %d adjacency entries, %d bytes of adjacency\n", testG.vertexCount(),
+				testG.adjacencyCount(), testG.adjacencyBytes());
+	}
+}
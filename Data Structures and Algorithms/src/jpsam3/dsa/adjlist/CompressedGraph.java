@@ -0,0 +1,300 @@
+package jpsam3.dsa.adjlist;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable graph with gap-compressed neighbour lists, for graphs too big to hold as CompactGraph's 4-byte targets.
+ *
+ * All lists share one byte array; vertex v's list starts at offsets[v] and holds [degree][first neighbour][gap]...,
+ * each an unsigned LEB128 varint (7 bits per byte, high bit set on all but the last byte). Lists are sorted, so the gaps
+ * are small: with any locality in the ids most take one or two bytes, making adjacency 2-4 times smaller than CSR.
+ * Decoding is a byte load, a mask and a shift per neighbour, cheap enough for traversals to read lists directly through
+ * a NeighbourIterator. This is the same encoding BinaryGraphFile stores on disk.
+ *
+ * Build one from a CompactGraph with compress(), or straight from an edge list with CompactGraph.Builder's
+ * buildCompressed() (EdgeListLoader.loadCompressed() for a file), which never holds the lists as CSR. The name
+ * dictionary is shared with the graph or builder it came from.
+ */
+public class CompressedGraph implements AdjacencyGraph
+{
+	private final NameTable ids;			// Shared with the source graph.
+	private final String[]  names;
+	private final int[]     offsets;		// Vertex -> start of its list in data.
+	private final byte[]    data;
+	private final long      adjacencyCount;
+
+	CompressedGraph(NameTable ids, String[] names, int[] offsets, byte[] data, long adjacencyCount)
+	{
+		this.ids = ids;
+		this.names = names;
+		this.offsets = offsets;
+		this.data = data;
+		this.adjacencyCount = adjacencyCount;
+	}
+
+	/**
+	 * Encodes graph's neighbour lists. The result only keeps graph's names, so once the caller lets go of graph its
+	 * CSR arrays can be collected.
+	 * @throws IllegalArgumentException If the encoded lists would not fit in one array (over 2 GB).
+	 */
+	public static CompressedGraph compress(CompactGraph graph)
+	{
+		int n = graph.vertexCount();
+		int[] offsets = new int[n];
+
+		long size = 0;
+		for (int v = 0; v < n; v++)
+		{
+			size += BinaryGraphFile.varintBytes(graph.degree(v));
+			for (int i = graph.offset(v), prev = 0; i < graph.offset(v + 1); i++)
+			{
+				size += BinaryGraphFile.varintBytes(graph.target(i) - prev);
+				prev = graph.target(i);
+			}
+		}
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Compressed adjacency too big for one array: " + size + " bytes");
+
+		byte[] data = new byte[(int) size];
+		int pos = 0;
+		for (int v = 0; v < n; v++)
+		{
+			offsets[v] = pos;
+			pos = writeVarint(data, pos, graph.degree(v));
+			for (int i = graph.offset(v), prev = 0; i < graph.offset(v + 1); i++)
+			{
+				pos = writeVarint(data, pos, graph.target(i) - prev);
+				prev = graph.target(i);
+			}
+		}
+
+		return new CompressedGraph(graph.ids, graph.names, offsets, data, graph.adjacencyCount());
+	}
+
+	/**
+	 * @return Position just past value, written at pos as an unsigned LEB128 varint.
+	 */
+	static int writeVarint(byte[] data, int pos, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			data[pos++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+		return pos;
+	}
+
+	@Override
+	public int vertexCount()
+	{
+		return offsets.length;
+	}
+
+	@Override
+	public long adjacencyCount()
+	{
+		return adjacencyCount;
+	}
+
+	@Override
+	public int degree(int v)
+	{
+		int pos = offsets[v], value = 0, shift = 0;
+		byte b;
+		do
+		{
+			b = data[pos++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	@Override
+	public String name(int v)
+	{
+		return names[v];
+	}
+
+	@Override
+	public int id(String name)
+	{
+		return ids.get(name);
+	}
+
+	/**
+	 * @return Bytes held by the compressed lists and their offsets.
+	 */
+	public long adjacencyBytes()
+	{
+		return data.length + 4L * offsets.length;
+	}
+
+	@Override
+	public NeighbourIterator neighbourIterator()
+	{
+		return new NeighbourIterator() {
+			private int pos, remaining, prev;
+
+			@Override
+			public void reset(int v)
+			{
+				int p = offsets[v], value = 0, shift = 0;
+				byte b;
+				do
+				{
+					b = data[p++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				pos = p;
+				remaining = value;
+				prev = 0;
+			}
+
+			@Override
+			public int next()
+			{
+				if (remaining == 0)
+					return -1;
+				remaining--;
+
+				byte b = data[pos++];
+				if (b >= 0)								// One-byte gap, by far the common case.
+					return prev += b;
+
+				int gap = b & 0x7F, shift = 7;
+				do
+				{
+					b = data[pos++];
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				return prev += gap;
+			}
+		};
+	}
+
+	/*
+	 * Some tests: size and BFS speed against the CompactGraph it came from, then peak heap building it through CSR and
+	 * compress() against buildCompressed(). Optional argument: vertex count.
+	 */
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		CompactGraph.Builder builder = randomBuilder(n);
+		CompactGraph graph = builder.build();
+		CompressedGraph compressed = compress(graph);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		int[] expected = null, actual = null;
+		long plainTime = Long.MAX_VALUE, compressedTime = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++)
+		{
+			long start = System.nanoTime();
+			expected = new ParallelBFS(graph, pool).distances(0);
+			plainTime = Math.min(plainTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			actual = new ParallelBFS(compressed, pool).distances(0);
+			compressedTime = Math.min(compressedTime, System.nanoTime() - start);
+		}
+
+		System.out.printf("%d adjacency entries: CSR %d bytes, compressed %d bytes (%.1fx smaller); "
+				+ "BFS %.1f ms vs %.1f ms, %s%n", graph.adjacencyCount(), graph.adjacencyBytes(),
+				compressed.adjacencyBytes(), (double) graph.adjacencyBytes() / compressed.adjacencyBytes(),
+				plainTime / 1e6, compressedTime / 1e6, Arrays.equals(expected, actual) ? "matches" : "MISMATCH");
+		pool.shutdown();
+		graph = null;
+		compressed = null;
+		builder = null;
+
+		builder = randomBuilder(n);
+		long base = resetPeak();
+		compressed = compress(builder.build());
+		long throughCsr = peakHeap() - base;
+
+		builder = randomBuilder(n);
+		base = resetPeak();
+		CompressedGraph direct = builder.buildCompressed();
+		long straight = peakHeap() - base;
+
+		System.out.printf("Peak heap over the filled builder: build() + compress() %.1f MB, buildCompressed() %.1f MB, "
+				+ "%s%n", throughCsr / 1e6, straight / 1e6, sameLists(compressed, direct) ? "matches" : "MISMATCH");
+	}
+
+	/**
+	 * @return A builder holding n vertices and 8n mostly local edges, like friends of friends, the same for every n.
+	 */
+	private static CompactGraph.Builder randomBuilder(int n)
+	{
+		Random rand = new Random(20);
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (int v = 0; v < n; v++)
+			builder.addVertex(String.format("%08d", v));
+		for (long e = 0; e < 8L * n; e++)
+		{
+			int a = rand.nextInt(n);
+			int b = rand.nextInt(10) == 0 ? rand.nextInt(n) : Math.min(n - 1, Math.max(0, a + rand.nextInt(2001) - 1000));
+			builder.addEdge(a, b);
+		}
+		return builder;
+	}
+
+	/**
+	 * Collects garbage and restarts the heap pools' peak usage.
+	 * @return Heap in use afterwards.
+	 */
+	private static long resetPeak()
+	{
+		System.gc();
+		long used = 0;
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+			if (memoryPool.getType() == MemoryType.HEAP)
+			{
+				memoryPool.resetPeakUsage();
+				used += memoryPool.getUsage().getUsed();
+			}
+		return used;
+	}
+
+	/**
+	 * @return Sum of the heap pools' peak usage since resetPeak(), garbage included, so an upper bound.
+	 */
+	private static long peakHeap()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+			if (memoryPool.getType() == MemoryType.HEAP)
+				peak += memoryPool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	private static boolean sameLists(CompressedGraph a, CompressedGraph b)
+	{
+		if (a.vertexCount() != b.vertexCount())
+			return false;
+		NeighbourIterator x = a.neighbourIterator(), y = b.neighbourIterator();
+		for (int v = 0; v < a.vertexCount(); v++)
+		{
+			x.reset(v);
+			y.reset(v);
+			int next;
+			do
+			{
+				next = x.next();
+				if (next != y.next())
+					return false;
+			} while (next >= 0);
+		}
+		return true;
+	}
+}
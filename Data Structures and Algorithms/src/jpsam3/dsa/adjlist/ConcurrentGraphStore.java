@@ -0,0 +1,284 @@
+package jpsam3.dsa.adjlist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Graph that can be read by any number of threads while another keeps adding edges.
+ *
+ * Readers see an immutable CompactGraph snapshot published through a volatile field, so a read never takes a lock and
+ * a query keeps using the snapshot it started on. New edges go into a small delta buffer under a lock; once it holds
+ * mergeThreshold edges (or on merge()), the snapshot and the delta are merged copy-on-write into a new snapshot, which
+ * replaces the old one in a single volatile write. Edges are visible to readers from the merge after they were added.
+ *
+ * Traversal state lives in per-thread scratch arrays rather than on shared vertex objects, so queries run in parallel.
+ */
+public class ConcurrentGraphStore
+{
+	public static final int INF = ParallelBFS.INF;
+
+	private volatile CompactGraph snapshot;
+	private final int mergeThreshold;
+
+	private final Object deltaLock = new Object();
+	private String[] deltaA = new String[16];		// Pending edges, guarded by deltaLock.
+	private String[] deltaB = new String[16];
+	private int deltaCount;
+
+	private final Object mergeLock = new Object();	// One merge at a time.
+	private final CompactGraph.Builder merged = new CompactGraph.Builder();	// Every merged edge, guarded by mergeLock.
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue()
+		{
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * @param mergeThreshold Pending edges that trigger a merge from the writing thread.
+	 */
+	public ConcurrentGraphStore(int mergeThreshold)
+	{
+		this.mergeThreshold = mergeThreshold;
+		snapshot = merged.build();
+	}
+
+	/**
+	 * Queues an edge; merges the delta into a new snapshot if this fills it.
+	 */
+	public void addEdge(String a, String b)
+	{
+		boolean full;
+		synchronized (deltaLock)
+		{
+			if (deltaCount == deltaA.length)
+			{
+				deltaA = Arrays.copyOf(deltaA, deltaCount * 2);
+				deltaB = Arrays.copyOf(deltaB, deltaCount * 2);
+			}
+			deltaA[deltaCount] = a;
+			deltaB[deltaCount++] = b;
+			full = deltaCount >= mergeThreshold;
+		}
+		if (full)
+			merge();
+	}
+
+	/*
+	 * Takes a "name : name" line, as in Graph.handleLine().
+	 */
+	public void handleLine(String readLine)
+	{
+		int sep = readLine.indexOf(" : ");
+		if (sep >= 0)
+			addEdge(readLine.substring(0, sep), readLine.substring(sep + 3));
+	}
+
+	public int pendingEdges()
+	{
+		synchronized (deltaLock)
+		{
+			return deltaCount;
+		}
+	}
+
+	/**
+	 * Builds a new snapshot from the current one plus every pending edge and publishes it. Writers can keep adding
+	 * edges meanwhile; they go into a fresh delta for the next merge.
+	 */
+	public void merge()
+	{
+		synchronized (mergeLock)
+		{
+			String[] a, b;
+			int count;
+			synchronized (deltaLock)
+			{
+				if (deltaCount == 0)
+					return;
+				a = deltaA;
+				b = deltaB;
+				count = deltaCount;
+				deltaA = new String[16];
+				deltaB = new String[16];
+				deltaCount = 0;
+			}
+
+			for (int e = 0; e < count; e++)
+				merged.addEdge(a[e], b[e]);
+			snapshot = merged.build();						// Old snapshot plus the delta, in a new CompactGraph.
+		}
+	}
+
+	/**
+	 * @return The current snapshot; it never changes, however many edges are added after.
+	 */
+	public CompactGraph snapshot()
+	{
+		return snapshot;
+	}
+
+	/**
+	 * BFS on the current snapshot, stopping as soon as to is reached.
+	 * @return Distance in edges from one to the other, INF if they aren't connected or either isn't in the snapshot.
+	 */
+	public int distance(String from, String to)
+	{
+		CompactGraph graph = snapshot;
+		int source = graph.id(from), target = graph.id(to);
+		if (source < 0 || target < 0)
+			return INF;
+		if (source == target)
+			return 0;
+
+		Scratch s = scratch.get();
+		s.ensure(graph.vertexCount());
+		int[] dist = s.dist, queue = s.queue;
+		int head = 0, tail = 0, result = INF;
+
+		dist[source] = 0;
+		queue[tail++] = source;
+		search:
+		while (head < tail)
+		{
+			int v = queue[head++];
+			for (int i = graph.offsets[v]; i < graph.offsets[v + 1]; i++)
+			{
+				int u = graph.targets[i];
+				if (dist[u] == INF)
+				{
+					dist[u] = dist[v] + 1;
+					queue[tail++] = u;
+					if (u == target)
+					{
+						result = dist[u];
+						break search;
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < tail; i++)				// Only reset what this query touched.
+			dist[queue[i]] = INF;
+		return result;
+	}
+
+	/**
+	 * Runs distance(from[i], to[i]) for every i as separate tasks on executor, all against the same snapshot state
+	 * each task finds when it starts.
+	 * @return Distance for each pair.
+	 */
+	public int[] distances(final String[] from, final String[] to, ExecutorService executor)
+			throws InterruptedException
+	{
+		List<Future<Integer>> futures = new ArrayList<>(from.length);
+		for (int i = 0; i < from.length; i++)
+		{
+			final int query = i;
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call()
+				{
+					return distance(from[query], to[query]);
+				}
+			}));
+		}
+
+		int[] result = new int[from.length];
+		try {
+			for (int i = 0; i < result.length; i++)
+				result[i] = futures.get(i).get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return result;
+	}
+
+	/**
+	 * One thread's BFS state: distances start at INF and are put back to INF after every query, so a query costs
+	 * only what it touches, not the size of the graph.
+	 */
+	private static class Scratch
+	{
+		private int[] dist  = new int[0];
+		private int[] queue = new int[0];
+
+		private void ensure(int n)
+		{
+			if (dist.length < n)
+			{
+				dist = new int[n + (n >>> 3)];
+				Arrays.fill(dist, INF);
+				queue = new int[dist.length];
+			}
+		}
+	}
+
+	/* Some tests: queries on 4 threads while a writer loads edges; results checked against one final snapshot. */
+	public static void main(String[] args) throws Exception
+	{
+		final int n = 200000;
+		final ConcurrentGraphStore store = new ConcurrentGraphStore(1 << 16);
+		final AtomicBoolean loading = new AtomicBoolean(true);
+
+		Thread writer = new Thread() {
+			@Override
+			public void run()
+			{
+				Random rand = new Random(18);
+				for (int e = 0; e < 4 * n; e++)
+					store.addEdge("p" + rand.nextInt(n), "p" + rand.nextInt(n));
+				store.merge();
+				loading.set(false);
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Random rand = new Random(180);
+		String[] from = new String[1000], to = new String[1000];
+		for (int i = 0; i < from.length; i++)
+		{
+			from[i] = "p" + rand.nextInt(n);
+			to[i] = "p" + rand.nextInt(n);
+		}
+
+		long start = System.nanoTime();
+		writer.start();
+		int rounds = 0, snapshots = 0;
+		CompactGraph last = null;
+		while (loading.get())
+		{
+			store.distances(from, to, executor);
+			rounds++;
+			if (store.snapshot() != last)
+			{
+				last = store.snapshot();
+				snapshots++;
+			}
+		}
+		writer.join();
+		System.out.printf("%d query rounds of %d over %d snapshots while loading, %.1f ms%n", rounds, from.length,
+				snapshots, (System.nanoTime() - start) / 1e6);
+
+		CompactGraph graph = store.snapshot();
+		ParallelBFS bfs = new ParallelBFS(graph, new ForkJoinPool(1));
+		int[] results = store.distances(from, to, executor);
+		boolean ok = true;
+		for (int i = 0; i < 50; i++)
+			ok &= bfs.distances(graph.id(from[i]))[graph.id(to[i])] == results[i];
+		System.out.printf("%d vertices, %d adjacency entries, distances %s%n", graph.vertexCount(),
+				graph.adjacencyCount(), ok ? "match" : "MISMATCH");
+		executor.shutdown();
+	}
+}
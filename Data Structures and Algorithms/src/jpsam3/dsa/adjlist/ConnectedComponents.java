@@ -0,0 +1,265 @@
+package jpsam3.dsa.adjlist;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jpsam3.dsa.disjointsets.ConcurrentDisjointSet;
+
+/**
+ * Connected components of an AdjacencyGraph as a component id per vertex plus the size of each component.
+ *
+ * Components are numbered 0, 1, 2, ... in order of their lowest vertex id, so both ways of computing them give the same
+ * numbering, and since vertex ids follow name order, listing a component's vertices by id lists them by name.
+ *
+ * compute() is a BFS from every unlabelled vertex, O(V + E). computeParallel() is Afforest (M. Sutton, T. Ben-Nun,
+ * A. Barak, "Optimizing Parallel Graph Connectivity Computation via Subgraph Sampling", IPDPS 2018) on a
+ * ConcurrentDisjointSet: link every vertex to its first NEIGHBOUR_ROUNDS neighbours, sample which root is the biggest
+ * (on real graphs one giant component soaks up most vertices by then), and finish linking only from vertices outside
+ * it. Every edge is stored from both ends, so an edge with one end in the giant component is still linked from the other.
+ */
+public class ConnectedComponents
+{
+	private static final int NEIGHBOUR_ROUNDS   = 2;
+	private static final int SAMPLES            = 1024;
+	private static final int VERTICES_PER_TASK  = 1 << 12;
+
+	private final int[] component;			// Vertex -> component id.
+	private final int[] sizes;				// Component id -> vertex count.
+
+	private ConnectedComponents(int[] component, int[] sizes)
+	{
+		this.component = component;
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Labels components with a BFS from each vertex not yet reached, on a plain int array queue.
+	 */
+	public static ConnectedComponents compute(AdjacencyGraph graph)
+	{
+		int n = graph.vertexCount();
+		NeighbourIterator neighbours = graph.neighbourIterator();
+		int[] component = new int[n];
+		int[] queue = new int[n];
+		int[] sizes = new int[16];
+		int count = 0;
+
+		Arrays.fill(component, -1);
+		for (int root = 0; root < n; root++)
+		{
+			if (component[root] >= 0)
+				continue;
+
+			int head = 0, tail = 0;
+			component[root] = count;
+			queue[tail++] = root;
+			while (head < tail)
+			{
+				int v = queue[head++];
+				neighbours.reset(v);
+				for (int u; (u = neighbours.next()) >= 0; )
+					if (component[u] < 0)
+					{
+						component[u] = count;
+						queue[tail++] = u;
+					}
+			}
+
+			if (count == sizes.length)
+				sizes = Arrays.copyOf(sizes, count * 2);
+			sizes[count++] = tail;
+		}
+		return new ConnectedComponents(component, Arrays.copyOf(sizes, count));
+	}
+
+	/**
+	 * Same result as compute(), found by linking edges into a ConcurrentDisjointSet from all of pool's threads.
+	 */
+	public static ConnectedComponents computeParallel(AdjacencyGraph graph, ForkJoinPool pool)
+	{
+		int n = graph.vertexCount();
+		ConcurrentDisjointSet sets = new ConcurrentDisjointSet(n);
+
+		for (int round = 0; round < NEIGHBOUR_ROUNDS; round++)
+			pool.invoke(new LinkTask(graph, sets, round, round + 1, -1, 0, n));
+
+		int giant = n > 0 ? sampleGiant(sets, n) : -1;
+		pool.invoke(new LinkTask(graph, sets, NEIGHBOUR_ROUNDS, Integer.MAX_VALUE, giant, 0, n));
+
+		// Number roots in order of their lowest vertex, as compute() does.
+		int[] component = new int[n];
+		int[] rootLabel = new int[n];
+		int[] sizes = new int[16];
+		int count = 0;
+
+		Arrays.fill(rootLabel, -1);
+		for (int v = 0; v < n; v++)
+		{
+			int root = sets.find(v);
+			if (rootLabel[root] < 0)
+			{
+				if (count == sizes.length)
+					sizes = Arrays.copyOf(sizes, count * 2);
+				rootLabel[root] = count++;
+			}
+			component[v] = rootLabel[root];
+			sizes[component[v]]++;
+		}
+		return new ConnectedComponents(component, Arrays.copyOf(sizes, count));
+	}
+
+	/**
+	 * @return The most common root among SAMPLES random vertices.
+	 */
+	private static int sampleGiant(ConcurrentDisjointSet sets, int n)
+	{
+		Random rand = new Random(n);
+		int[] roots = new int[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++)
+			roots[i] = sets.find(rand.nextInt(n));
+		Arrays.sort(roots);
+
+		int best = roots[0], bestRun = 0;
+		for (int i = 0, run = 0; i < SAMPLES; i++)
+		{
+			run = i > 0 && roots[i] == roots[i - 1] ? run + 1 : 1;
+			if (run > bestRun)
+			{
+				best = roots[i];
+				bestRun = run;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Unions each vertex in [lo, hi) with its neighbours number firstNeighbour up to (not including) lastNeighbour,
+	 * skipping vertices already in the skipRoot set.
+	 */
+	private static class LinkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final AdjacencyGraph graph;
+		private final ConcurrentDisjointSet sets;
+		private final int firstNeighbour, lastNeighbour, skipRoot;
+		private final int lo, hi;
+
+		private LinkTask(AdjacencyGraph graph, ConcurrentDisjointSet sets, int firstNeighbour, int lastNeighbour,
+				int skipRoot, int lo, int hi)
+		{
+			this.graph = graph;
+			this.sets = sets;
+			this.firstNeighbour = firstNeighbour;
+			this.lastNeighbour = lastNeighbour;
+			this.skipRoot = skipRoot;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (hi - lo > VERTICES_PER_TASK)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new LinkTask(graph, sets, firstNeighbour, lastNeighbour, skipRoot, lo, mid),
+						new LinkTask(graph, sets, firstNeighbour, lastNeighbour, skipRoot, mid, hi));
+				return;
+			}
+
+			NeighbourIterator neighbours = graph.neighbourIterator();
+			for (int v = lo; v < hi; v++)
+			{
+				int end = Math.min(graph.degree(v), lastNeighbour);
+				if (firstNeighbour >= end || (skipRoot >= 0 && sets.find(v) == skipRoot))
+					continue;
+
+				neighbours.reset(v);
+				for (int i = 0; i < firstNeighbour; i++)		// Already linked in an earlier round.
+					neighbours.next();
+				for (int i = firstNeighbour; i < end; i++)
+					sets.union(v, neighbours.next());
+			}
+		}
+	}
+
+	public int count()
+	{
+		return sizes.length;
+	}
+
+	public int component(int v)
+	{
+		return component[v];
+	}
+
+	public int size(int c)
+	{
+		return sizes[c];
+	}
+
+	/**
+	 * Scans every vertex, so to list all components bucket the component() ids in one pass instead.
+	 * @return Vertex ids of component c, ascending.
+	 */
+	public int[] members(int c)
+	{
+		int[] members = new int[sizes[c]];
+		for (int v = 0, k = 0; k < members.length; v++)
+			if (component[v] == c)
+				members[k++] = v;
+		return members;
+	}
+
+	/**
+	 * @return Copy of the per-vertex component ids.
+	 */
+	public int[] components()
+	{
+		return component.clone();
+	}
+
+	/**
+	 * @return Copy of the per-component sizes.
+	 */
+	public int[] sizes()
+	{
+		return sizes.clone();
+	}
+
+	/* Some tests: sequential against parallel on a random graph with many small components. Optional argument: n. */
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random rand = new Random(16);
+
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (int v = 0; v < n; v++)
+			builder.addVertex(Integer.toString(v));
+		for (int e = 0; e < n / 2 + n / 4; e++)					// Just past the giant component threshold.
+			builder.addEdge(rand.nextInt(n), rand.nextInt(n));
+		CompactGraph graph = builder.build();
+
+		ForkJoinPool pool = new ForkJoinPool();
+		long start = System.nanoTime();
+		ConnectedComponents sequential = compute(graph);
+		long sequentialTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		ConnectedComponents parallel = computeParallel(graph, pool);
+		long parallelTime = System.nanoTime() - start;
+
+		int largest = 0;
+		for (int size : sequential.sizes)
+			largest = Math.max(largest, size);
+
+		System.out.printf("%d components (largest %d): sequential %.1f ms, parallel %.1f ms on %d threads, %s%n",
+				sequential.count(), largest, sequentialTime / 1e6, parallelTime / 1e6, pool.getParallelism(),
+				Arrays.equals(sequential.component, parallel.component)
+						&& Arrays.equals(sequential.sizes, parallel.sizes) ? "matches" : "MISMATCH");
+		pool.shutdown();
+	}
+}
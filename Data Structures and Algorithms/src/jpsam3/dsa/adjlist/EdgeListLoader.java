@@ -0,0 +1,401 @@
+package jpsam3.dsa.adjlist;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a "name SEPARATOR name" edge list file into a CompactGraph using every core.
+ *
+ * The file is memory-mapped and cut into chunks on line boundaries. Each chunk is parsed by its own task straight from
+ * the mapped bytes: names are hashed and interned byte by byte into a chunk-local dictionary, and edges go into a
+ * chunk-local pair of int arrays, so no per-line Strings, regexes or shared state are involved. A String is only made
+ * once per distinct name per chunk. The chunks are then merged into one CompactGraph.Builder in a single bulk step,
+ * which lays the graph out as CSR with its neighbour lists sorted on the same pool.
+ *
+ * loadInto() stops before the layout and leaves the edges in a builder the caller already has, so a graph kept in a
+ * builder can take a whole file and build once, with no per-edge insertions.
+ */
+public class EdgeListLoader
+{
+	private static final int  CHUNKS_PER_THREAD = 4;			// More chunks than threads to even out uneven lines.
+	private static final long MAX_CHUNK_SIZE    = 1 << 28;		// Each chunk is one mapping, which must fit in an int.
+	private static final long MIN_CHUNK_SIZE    = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Loads filePath on a new pool sized to the machine.
+	 * @see #load(String, String, ForkJoinPool)
+	 */
+	public static CompactGraph load(String filePath, String separator) throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return load(filePath, separator, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @param filePath Edge list, one edge per line (\n or \r\n endings). Lines without the separator are skipped.
+	 * @param separator What separates the two names on a line, e.g. " : " for Graph files or " " for bipartite ones.
+	 * @param pool Pool to parse chunks on.
+	 * @return The graph; duplicate edges are merged.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static CompactGraph load(String filePath, String separator, ForkJoinPool pool) throws IOException
+	{
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		loadInto(builder, filePath, separator, pool);
+		return builder.build(pool);
+	}
+
+	/**
+	 * Same as load(), but encodes the graph straight into a CompressedGraph with CompactGraph.Builder.buildCompressed(),
+	 * so its neighbour lists are never held as CSR.
+	 */
+	public static CompressedGraph loadCompressed(String filePath, String separator, ForkJoinPool pool)
+			throws IOException
+	{
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		loadInto(builder, filePath, separator, pool);
+		return builder.buildCompressed();
+	}
+
+	/**
+	 * Parses filePath on pool and adds its vertices and edges to builder, without building.
+	 * @param builder Builder to add to; it may already hold a graph.
+	 * @param filePath Edge list, as for load().
+	 * @param separator What separates the two names on a line.
+	 * @param pool Pool to parse chunks on.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static void loadInto(CompactGraph.Builder builder, String filePath, String separator, ForkJoinPool pool)
+			throws IOException
+	{
+		byte[] sep = separator.getBytes(UTF8);
+		if (sep.length == 0)
+			throw new IllegalArgumentException("Empty separator");
+
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		List<ParseTask> tasks = new ArrayList<>();
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			long target = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE,
+					size / (pool.getParallelism() * CHUNKS_PER_THREAD) + 1));
+
+			long start = 0;
+			while (start < size)
+			{
+				long end = lineStartAfter(channel, Math.min(size, start + target), size);
+				tasks.add(new ParseTask(channel, start, end, sep));
+				start = end;
+			}
+
+			for (ParseTask task : tasks)
+				pool.execute(task);
+
+			for (int i = 0; i < tasks.size(); i++)
+			{
+				tasks.get(i).join().mergeInto(builder);
+				tasks.set(i, null);								// Lets the chunk go once the builder has its edges.
+			}
+		} catch (RuntimeException e) {
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+				if (cause instanceof ChunkIOException)		// A chunk failed to map; join() may have wrapped it.
+					throw ((ChunkIOException) cause).getCause();
+			throw e;
+		} finally {
+			for (ParseTask task : tasks)					// Nothing may still be mapping the file when it's closed.
+				if (task != null && !task.cancel(false))
+					task.quietlyJoin();
+			file.close();
+		}
+	}
+
+	/**
+	 * @return Offset just past the first '\n' at or after pos, or size if there is none.
+	 */
+	private static long lineStartAfter(FileChannel channel, long pos, long size) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		while (pos < size)
+		{
+			buf.clear();
+			int read = channel.read(buf, pos);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++)
+				if (buf.get(i) == '\n')
+					return pos + i + 1;
+			pos += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Carries the IOException of a chunk that failed to map out of ParseTask.compute(), which can't throw it, back to
+	 * loadInto() (java.io.UncheckedIOException is Java 8).
+	 */
+	private static class ChunkIOException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private ChunkIOException(IOException cause)
+		{
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause()
+		{
+			return (IOException) super.getCause();
+		}
+	}
+
+	/**
+	 * Parses the lines in [from, to) of the file into a Chunk.
+	 */
+	private static class ParseTask extends RecursiveTask<Chunk>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long from, to;
+		private final byte[] sep;
+
+		private ParseTask(FileChannel channel, long from, long to, byte[] sep)
+		{
+			this.channel = channel;
+			this.from = from;
+			this.to = to;
+			this.sep = sep;
+		}
+
+		@Override
+		protected Chunk compute()
+		{
+			MappedByteBuffer buf;
+			try {
+				buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			} catch (IOException e) {
+				throw new ChunkIOException(e);
+			}
+
+			Chunk chunk = new Chunk();
+			int len = buf.limit();
+			int lineStart = 0;
+			while (lineStart < len)
+			{
+				int lineEnd = lineStart;
+				while (lineEnd < len && buf.get(lineEnd) != '\n')
+					lineEnd++;
+
+				int nameEnd = lineEnd;
+				if (nameEnd > lineStart && buf.get(nameEnd - 1) == '\r')
+					nameEnd--;
+
+				int split = indexOf(buf, lineStart, nameEnd, sep);
+				if (split >= 0)
+					chunk.addEdge(chunk.intern(buf, lineStart, split), chunk.intern(buf, split + sep.length, nameEnd));
+
+				lineStart = lineEnd + 1;
+			}
+			return chunk;
+		}
+
+		/**
+		 * @return Index of the first occurrence of sep in buf[from, to), or -1.
+		 */
+		private static int indexOf(ByteBuffer buf, int from, int to, byte[] sep)
+		{
+			byte first = sep[0];
+			outer:
+			for (int i = from; i <= to - sep.length; i++)
+			{
+				if (buf.get(i) != first)
+					continue;
+				for (int j = 1; j < sep.length; j++)
+					if (buf.get(i + j) != sep[j])
+						continue outer;
+				return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Names and edges parsed out of one chunk. Names are kept as bytes in one pool array and interned through an
+	 * open-addressing table keyed on a hash of those bytes.
+	 */
+	private static class Chunk
+	{
+		private byte[] pool       = new byte[1 << 12];
+		private int    poolLen;
+		private int[]  nameStart  = new int[64];		// Local id -> offset of its bytes in pool; nameStart[id + 1] ends it.
+		private int    nameCount;
+		private int[]  slots      = new int[128];		// Local id + 1, 0 if empty.
+		private int[]  slotHashes = new int[128];
+
+		private int[]  from = new int[1 << 10];
+		private int[]  to   = new int[1 << 10];
+		private int    edgeCount;
+
+		/**
+		 * @return Local id of the name in buf[start, end).
+		 */
+		private int intern(ByteBuffer buf, int start, int end)
+		{
+			int h = 0x811C9DC5;								// FNV-1a
+			for (int i = start; i < end; i++)
+				h = (h ^ buf.get(i)) * 0x01000193;
+
+			int mask = slots.length - 1;
+			int slot = h & mask;
+			for (int id; (id = slots[slot] - 1) >= 0; slot = (slot + 1) & mask)
+				if (slotHashes[slot] == h && equalsName(id, buf, start, end))
+					return id;
+
+			int len = end - start;
+			if (poolLen + len > pool.length)
+				pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolLen + len));
+			for (int i = 0; i < len; i++)
+				pool[poolLen + i] = buf.get(start + i);
+
+			if (nameCount + 2 > nameStart.length)
+				nameStart = Arrays.copyOf(nameStart, nameStart.length * 2);
+			nameStart[nameCount] = poolLen;
+			poolLen += len;
+			nameStart[nameCount + 1] = poolLen;
+
+			slots[slot] = nameCount + 1;
+			slotHashes[slot] = h;
+			if (++nameCount * 2 > slots.length)
+				rehash();
+			return nameCount - 1;
+		}
+
+		private boolean equalsName(int id, ByteBuffer buf, int start, int end)
+		{
+			int off = nameStart[id];
+			if (nameStart[id + 1] - off != end - start)
+				return false;
+			for (int i = start; i < end; i++)
+				if (pool[off++] != buf.get(i))
+					return false;
+			return true;
+		}
+
+		private void rehash()
+		{
+			int[] oldSlots = slots, oldHashes = slotHashes;
+			slots      = new int[oldSlots.length * 2];
+			slotHashes = new int[slots.length];
+
+			int mask = slots.length - 1;
+			for (int i = 0; i < oldSlots.length; i++)
+				if (oldSlots[i] != 0)
+				{
+					int slot = oldHashes[i] & mask;
+					while (slots[slot] != 0)
+						slot = (slot + 1) & mask;
+					slots[slot] = oldSlots[i];
+					slotHashes[slot] = oldHashes[i];
+				}
+		}
+
+		private void addEdge(int a, int b)
+		{
+			if (edgeCount == from.length)
+			{
+				from = Arrays.copyOf(from, edgeCount * 2);
+				to   = Arrays.copyOf(to, edgeCount * 2);
+			}
+			from[edgeCount] = a;
+			to[edgeCount++] = b;
+		}
+
+		/**
+		 * Maps this chunk's local ids onto the builder's and hands over all of its edges.
+		 */
+		private void mergeInto(CompactGraph.Builder builder)
+		{
+			int[] global = new int[nameCount];
+			for (int id = 0; id < nameCount; id++)
+				global[id] = builder.addVertex(new String(pool, nameStart[id], nameStart[id + 1] - nameStart[id], UTF8));
+
+			builder.addEdges(from, to, edgeCount, global);
+		}
+	}
+
+	/*
+	 * Some tests: loads a file (names.txt by default), then times generated edge lists end to end, from the file to the
+	 * finished CompactGraph, on pools of 1 thread up to all cores. Optional arguments: file, separator, generated edges.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		String filePath = args.length > 0 ? args[0] : "names.txt";
+		String separator = args.length > 1 ? args[1] : " : ";
+		int edges = args.length > 2 ? Integer.parseInt(args[2]) : 4000000;
+
+		long start = System.nanoTime();
+		CompactGraph graph = load(filePath, separator);
+		System.out.printf("Loaded %d vertices, %d adjacency entries in %.1f ms%n", graph.vertexCount(),
+				graph.adjacencyCount(), (System.nanoTime() - start) / 1e6);
+		if (graph.vertexCount() < 100)
+			graph.printGraph();
+
+		File generated = File.createTempFile("edges", ".txt");
+		generated.deleteOnExit();
+		Random rand = new Random(13);
+		BufferedWriter out = new BufferedWriter(new FileWriter(generated));
+		try {
+			for (int e = 0; e < edges; e++)
+				out.write("v" + rand.nextInt(edges / 8) + " v" + rand.nextInt(edges / 8) + "\n");
+		} finally {
+			out.close();
+		}
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.printf("%n%d edges, %d MB: best of 3%n%8s %14s %14s %14s%n", edges, generated.length() >> 20,
+				"threads", "parse + merge", "CSR build", "total");
+		for (int threads = 1; ; threads = Math.min(2 * threads, cores))
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long bestParse = Long.MAX_VALUE, bestBuild = Long.MAX_VALUE, bestTotal = Long.MAX_VALUE;
+			for (int i = 0; i < 3; i++)
+			{
+				start = System.nanoTime();
+				CompactGraph.Builder builder = new CompactGraph.Builder();
+				loadInto(builder, generated.getPath(), " ", pool);
+				long parsed = System.nanoTime();
+				builder.build(pool);
+				long built = System.nanoTime();
+
+				bestParse = Math.min(bestParse, parsed - start);
+				bestBuild = Math.min(bestBuild, built - parsed);
+				bestTotal = Math.min(bestTotal, built - start);
+			}
+			pool.shutdown();
+			System.out.printf("%8d %11.1f ms %11.1f ms %11.1f ms%n", threads, bestParse / 1e6, bestBuild / 1e6,
+					bestTotal / 1e6);
+			if (threads == cores)
+				break;
+		}
+		generated.delete();
+	}
+}
@@ -0,0 +1,86 @@
+package jpsam3.dsa.adjlist;
+
+import java.util.List;
+
+import jpsam3.dsa.disjointsets.DisjointSet;
+
+/**
+ * Immutable snapshot of the friendship groups GraphExtended maintains as edges arrive. Every vertex is resolved to a
+ * dense group number when the snapshot is taken, so queries are a name lookup plus an array read, and any number of
+ * threads can query it while the graph keeps changing.
+ */
+public class FriendGroups
+{
+	private final NameTable ids;			// Name -> vertex id.
+	private final int[]     group;			// Vertex id -> group number.
+	private final int[]     sizes;			// Group number -> vertex count.
+
+	/**
+	 * @param names Vertex name per element of sets.
+	 * @param sets Current groups; read (and path-compressed) but not otherwise changed.
+	 */
+	FriendGroups(List<String> names, DisjointSet sets)
+	{
+		int n = sets.size();
+		int[] label = new int[n];
+		int count = 0;
+
+		ids = new NameTable(n);
+		group = new int[n];
+		for (int v = 0; v < n; v++)
+		{
+			ids.intern(names.get(v));
+			label[v] = -1;
+		}
+
+		int[] groupSizes = new int[sets.setCount()];
+		for (int v = 0; v < n; v++)
+		{
+			int root = sets.find(v);
+			if (label[root] < 0)
+			{
+				label[root] = count;
+				groupSizes[count++] = sets.componentSize(root);
+			}
+			group[v] = label[root];
+		}
+		sizes = groupSizes;
+	}
+
+	/**
+	 * @return Group number of the named vertex, or -1 if it wasn't in the graph when the snapshot was taken.
+	 */
+	public int group(String name)
+	{
+		int v = ids.get(name);
+		return v < 0 ? -1 : group[v];
+	}
+
+	/**
+	 * @return True if both vertices exist and are in the same group.
+	 */
+	public boolean sameGroup(String a, String b)
+	{
+		int groupA = group(a);
+		return groupA >= 0 && groupA == group(b);
+	}
+
+	/**
+	 * @return Number of vertices in the named vertex's group, 0 if there is no such vertex.
+	 */
+	public int groupSize(String name)
+	{
+		int g = group(name);
+		return g < 0 ? 0 : sizes[g];
+	}
+
+	public int groupCount()
+	{
+		return sizes.length;
+	}
+
+	public int vertexCount()
+	{
+		return group.length;
+	}
+}
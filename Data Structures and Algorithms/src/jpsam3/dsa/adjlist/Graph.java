@@ -1,18 +1,44 @@
 package jpsam3.dsa.adjlist;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
-public class Graph
+public class Graph implements Closeable
 {
-	private TreeMap<String,TreeSet<String>> adjList;
+	private CompactGraph.Builder edges;		// the graph itself: names and edges, laid out as CSR by toCompactGraph()
+	private MappedGraph mapped;				// binary file the graph was opened from, null if none
 
 	public Graph()
 	{
-		adjList = new TreeMap<String, TreeSet<String>>();
+		edges = new CompactGraph.Builder();
+	}
+
+	/*
+	 * Opens a file written by writeBinaryFile() without reading it in: the graph is served straight from the mapped file
+	 * until it's changed or laid out by toCompactGraph(), which copy it into memory. The file stays open until close().
+	 */
+	public static Graph openBinaryFile(String filePath) throws IOException
+	{
+		Graph graph;
+
+		graph = new Graph();
+		graph.mapped = MappedGraph.open(filePath);
+		graph.edges = new CompactGraph.Builder(graph.mapped);
+		return graph;
+	}
+
+	/*
+	 * Closes the binary file the graph was opened from, after which it can't be used. Does nothing for other graphs.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mapped != null)
+			mapped.close();
 	}
 
 	/*
@@ -36,85 +62,100 @@ public class Graph
 	}
 
 	/*
-	 * Handles readLine by inserting node and specified edge into adjList if not already there.
+	 * Same as readFile(), but parses the file into the graph with EdgeListLoader (memory-mapped, on all cores) and lays
+	 * the new edges out straight away, sorting the neighbour lists on all cores too.
+	 */
+	public void readFileParallel(String filePath)
+	{
+		ForkJoinPool pool;
+
+		pool = new ForkJoinPool();
+		try {
+			EdgeListLoader.loadInto(edges, filePath, " : ", pool);
+			edges.build(pool);
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occured.");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Handles readLine by inserting node and specified edge into the graph if not already there.
 	 * ***ASSUMES proper formatting (as in prac specifications PDF)***
 	 */
 	public void handleLine(String readLine)
 	{
 		String[] names;
-		TreeSet<String> friendSet;
 
 		names = readLine.split(" : ");
 
 		for (String name : names)				// for each name, it adds it as a vertex in the jpsam3.dsa.adjlist.Graph (if not already existing)
-			if (!adjList.containsKey(name))
+			if (edges.id(name) < 0)
 				addNewVertex(name);
 
-		friendSet = adjList.get(names[0]);
-		if (!friendSet.contains(names[1]))		// adds new friend (edge) to given name's friend list if not already there
-			addNewFriend(friendSet, names[1]);
-
-		friendSet = adjList.get(names[1]);
-		if (!friendSet.contains(names[0]))		// same as above, but for second name in line
-			addNewFriend(friendSet, names[0]);
+		addNewFriend(names[0], names[1]);		// one call covers both directions
 	}
 
 	/*
-	 * Simple method to add a new vertex to our adjacency list.
-	 * Uses TreeMap class' put() method as no real need to reimplement the op.
+	 * Simple method to add a new vertex (with no friends yet) to the graph.
 	 */
 	public void addNewVertex(String key)
 	{
-		TreeSet<String> friendSet;
-
-		friendSet = new TreeSet<String>();
-		adjList.put(key, friendSet);
+		edges.addVertex(key);
 	}
 
 	/*
-	 * Simple method to add new friend (or in theory an edge between vertices).
-	 * Uses TreeSet class' add() method as no real need to reimplement the op.
+	 * Simple method to add new friend (or in theory an edge between vertices), both ways round.
+	 * Repeats are fine: they're dropped when the edges are next laid out by toCompactGraph().
 	 */
-	public void addNewFriend(TreeSet<String> friendSet, String key)
+	public void addNewFriend(String key, String friendKey)
 	{
-		friendSet.add(key);
+		edges.addEdge(key, friendKey);
 	}
 
 	/*
 	 * Prints out the information contained in the jpsam3.dsa.adjlist.Graph in a human-readable format.
-	 * For each vertex in the adjacency list, prints out the vertex followed by its adjacent vertices.
-	 ***Assuming that something is put into the TreeMap first.***
-	 ***Haven't put error checking in as it distracts from the actual implementation and use of the data structures.***
+	 * For each vertex, in name order, prints out the vertex followed by its adjacent vertices.
 	 */
 	public void printGraph()
 	{
-		String currentVertex, currentFriend;
-		TreeSet<String> currentFriendSet;
-
-		currentVertex = adjList.firstKey();				// start at first vertex in jpsam3.dsa.adjlist.Graph
-
-		do
-		{
-			System.out.printf("%s -->", currentVertex);
-			currentFriendSet = adjList.get(currentVertex);
-			currentFriend = currentFriendSet.first();	// start at first adjacent vertex/friend
+		toCompactGraph().printGraph();
+	}
 
-			do
-				System.out.printf("   %s", currentFriend);
-			while ((currentFriend = currentFriendSet.higher(currentFriend)) != null);		// updates the currentFriend each iteration to the next adjacent vertex to currentVertex
+	/*
+	 * Returns this jpsam3.dsa.adjlist.Graph as a CompactGraph (int ids in sorted name order, CSR adjacency) for the
+	 * algorithms that run on one. Only the edges added since the last call are laid out again; with none, it's the same
+	 * CompactGraph as last time.
+	 */
+	public CompactGraph toCompactGraph()
+	{
+		return edges.build();
+	}
 
-			System.out.printf("\n");
-		}
-		while ((currentVertex = adjList.higherKey(currentVertex)) != null);				// updates the currentVertex each iteration to the next vertex in the jpsam3.dsa.adjlist.Graph (until none left)
+	/*
+	 * Writes this graph as a BinaryGraphFile, which MappedGraph can open later without parsing anything.
+	 */
+	public void writeBinaryFile(String filePath) throws IOException
+	{
+		BinaryGraphFile.write(edges.graph(), filePath);
 	}
 
-	public static void main(String[] args)
+	public static void main(String[] args) throws IOException
 	{
-		Graph testG;
+		Graph testG, opened;
 
 		testG = new Graph();
 		testG.readFile("names.txt");
 		testG.printGraph();
+
+		testG.writeBinaryFile("names.txt.bin");
+		opened = openBinaryFile("names.txt.bin");
+		opened.handleLine("Hans : Jon");
+		System.out.printf("\nOpened from names.txt.bin and added Hans : Jon:\n");
+		opened.printGraph();
+		opened.close();
+		new File("names.txt.bin").delete();
 	}
 
 }
\ No newline at end of file
@@ -1,20 +1,58 @@
 package jpsam3.dsa.adjlist;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
-public class GraphExtended
+import jpsam3.dsa.disjointsets.DisjointSet;
+
+public class GraphExtended implements Closeable
 {
-	private static final int MAX_GROUPS = 10;
-	private static final int INF = -1;
+	private static final int INF = ParallelBFS.INF;
+	private static final ForkJoinPool POOL = new ForkJoinPool();	// shared by the parallel searches
 
-	private TreeMap<String,Vertex> adjList;
+	private CompactGraph.Builder edges;		// the graph itself: names and edges, laid out as CSR by toCompactGraph() or
+											// encoded as a CompressedGraph by compress()
+	private DisjointSet groups;				// friendship groups, kept up to date as edges arrive (indexed by edges' ids);
+											// null until needed for a graph from openBinaryFile()
+	private MappedGraph mapped;				// binary file the graph was opened from, null if none
+	private TreeMap<String,Vertex> adjList;	// Vertex view for DFS/BFS and unweightedDistances(); built from the CSR on
+											// first use and dropped whenever the graph changes
 
 	public GraphExtended()
 	{
-		adjList = new TreeMap<String,Vertex>();
+		edges = new CompactGraph.Builder();
+		groups = new DisjointSet(0);
+	}
+
+	/*
+	 * Opens a file written by writeBinaryFile() without reading it in: findGroups(), distancesFrom() and the other
+	 * queries run straight on the mapped file until the graph is changed, laid out by toCompactGraph() or encoded by
+	 * compress(), which copy it into memory. The friendship groups are worked out on first use. The file stays open until close().
+	 */
+	public static GraphExtended openBinaryFile(String filePath) throws IOException
+	{
+		GraphExtended graph;
+
+		graph = new GraphExtended();
+		graph.mapped = MappedGraph.open(filePath);
+		graph.edges = new CompactGraph.Builder(graph.mapped);
+		graph.groups = null;
+		return graph;
+	}
+
+	/*
+	 * Closes the binary file the graph was opened from, after which it can't be used. Does nothing for other graphs.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mapped != null)
+			mapped.close();
 	}
 
 	/*
@@ -38,66 +76,247 @@ public class GraphExtended
 	}
 
 	/*
-	 * Handles readLine by inserting Vertex and specified friends into adjList if not already there.
+	 * Same as readFile(), but parses the file into the graph with EdgeListLoader (memory-mapped, on all cores), lays it
+	 * out with the neighbour lists sorted on all cores, and brings the friendship groups up to date from a parallel
+	 * ConnectedComponents run: one union per vertex, with its component's first vertex, rather than one per edge.
+	 */
+	public void readFileParallel(String filePath)
+	{
+		groupSets();								// before the graph changes
+
+		try {
+			EdgeListLoader.loadInto(edges, filePath, " : ", POOL);
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occured.");
+			return;
+		}
+		while (groups.size() < edges.vertexCount())
+			groups.add();
+
+		unionComponents(edges.graph(POOL));
+		adjList = null;
+	}
+
+	/*
+	 * Puts every vertex of graph, the graph edges last built or served, in one friendship group with the first vertex of
+	 * its connected component (found with a parallel ConnectedComponents run).
+	 */
+	private void unionComponents(AdjacencyGraph graph)
+	{
+		ConnectedComponents components;
+		int[] first;
+		int c, id;
+
+		components = ConnectedComponents.computeParallel(graph, POOL);
+		first = new int[components.count()];
+		Arrays.fill(first, -1);
+		for (int v = 0; v < graph.vertexCount(); v++)
+		{
+			c = components.component(v);
+			id = edges.builderId(v);				// groups are indexed by the builder's ids
+			if (first[c] < 0)
+				first[c] = id;
+			else
+				groups.union(first[c], id);
+		}
+	}
+
+	/*
+	 * Returns the friendship groups, first working them out from the graph if it came from openBinaryFile().
+	 */
+	private DisjointSet groupSets()
+	{
+		if (groups == null)
+		{
+			groups = new DisjointSet(edges.vertexCount());
+			unionComponents(edges.graph());
+		}
+		return groups;
+	}
+
+	/*
+	 * Handles readLine by inserting both people and the friendship between them into the graph if not already there.
 	 * ***ASSUMES proper formatting (as in prac specifications PDF)***
 	 */
 	public void handleLine(String readLine)
 	{
 		String[] names;
-		Vertex friendA, friendB;
+		int friendA, friendB;
 
 		names = readLine.split(" : ");
 
-		for (String name : names)					// for each name, it adds it as a vertex in the jpsam3.dsa.adjlist.Graph (if not already existing)
-			if (!adjList.containsKey(name))
-				addNewVertex(name);
+		friendA = intern(names[0]);
+		friendB = intern(names[1]);
+		edges.addEdge(friendA, friendB);			// both directions; repeats are dropped when the CSR is next built
+		groupSets().union(friendA, friendB);		// O(a(n)) amortised; keeps the groups current without a traversal
+		adjList = null;
+	}
+
+	/*
+	 * Simple method to add a new vertex (with no friends yet) to the graph.
+	 */
+	public void addNewVertex(String key)
+	{
+		intern(key);
+		adjList = null;
+	}
+
+	/*
+	 * Returns the id of the named vertex in edges, adding it (and a singleton friendship group for it) if it's new.
+	 */
+	private int intern(String name)
+	{
+		int id;
 
-		friendA = adjList.get(names[0]);
-		friendB = adjList.get(names[1]);
+		groupSets();							// before the graph changes
+		id = edges.addVertex(name);
+		if (id == groups.size())				// new vertex; ids are handed out in order
+			groups.add();
+		return id;
+	}
 
-		if (!friendA.alreadyFriends(friendB))		// adds new friend (edge) to given name's friend list if not already there
-			friendA.addNewFriend(friendB);
+	/*
+	 * name1 and name2 in the same friendship group ? true : false (false if either isn't in the graph)
+	 * Answered from the incrementally maintained groups, so O(log |V|) for the name lookups and O(a(n)) after that.
+	 */
+	public boolean sameGroup(String name1, String name2)
+	{
+		int a, b;
 
-		if (!friendB.alreadyFriends(friendA))		// same as above, but for second name in line
-			friendB.addNewFriend(friendA);
+		a = edges.id(name1);
+		b = edges.id(name2);
+		return a >= 0 && b >= 0 && groupSets().connected(a, b);
 	}
 
 	/*
-	 * Simple method to add a new vertex to our adjacency list.
+	 * Returns the number of people in name's friendship group (0 if name isn't in the graph).
 	 */
-	public void addNewVertex(String key)
+	public int groupSize(String name)
+	{
+		int v;
+
+		v = edges.id(name);
+		return v < 0 ? 0 : groupSets().componentSize(v);
+	}
+
+	/*
+	 * Returns the current number of friendship groups.
+	 */
+	public int groupCount()
+	{
+		return groupSets().setCount();
+	}
+
+	/*
+	 * Returns an immutable copy of the current friendship groups, O(|V|). Unlike the methods above, which must be called
+	 * from the thread adding edges, the snapshot can be queried from any number of threads while edges keep arriving.
+	 */
+	public FriendGroups groupsSnapshot()
+	{
+		return new FriendGroups(Arrays.asList(edges.names()), groupSets());
+	}
+
+	/*
+	 * Returns this graph as a CompactGraph (int ids in sorted name order, CSR adjacency), which all the queries below
+	 * run on. Only the edges added since the last call are laid out again; with none, it's the same CompactGraph.
+	 */
+	public synchronized CompactGraph toCompactGraph()
+	{
+		return edges.build();
+	}
+
+	/*
+	 * Re-encodes the graph as a CompressedGraph, with gap-encoded neighbour lists about half the size of CSR, which
+	 * findGroups(), distancesFrom(), degreesOfSeparation() and the other queries then run on. Edges added later are
+	 * folded into a new CompressedGraph straight from the edge buffer, without going through CSR. toCompactGraph()
+	 * switches the graph back to CSR.
+	 */
+	public synchronized void compress()
+	{
+		edges.buildCompressed();
+	}
+
+	/*
+	 * Returns the graph the queries run on: the last CompactGraph or CompressedGraph built, brought up to date, or the
+	 * mapped file itself while a graph from openBinaryFile() is unchanged. Ids are in sorted name order in all of them.
+	 * Synchronised, like toCompactGraph() and compress(), so that concurrent queries bring the graph up to date one at a
+	 * time; the graph returned is immutable.
+	 */
+	private synchronized AdjacencyGraph graph()
+	{
+		return edges.graph();
+	}
+
+	/*
+	 * Returns the Vertex view of the graph walked by DFS(), BFS() and unweightedDistances(), building it from
+	 * graph() if the graph has changed since it was last built. Vertex.id is the graph() id.
+	 */
+	private TreeMap<String,Vertex> vertices()
+	{
+		AdjacencyGraph graph;
+		NeighbourIterator friends;
+		Vertex[] byId;
+
+		if (adjList != null)
+			return adjList;
+
+		graph = graph();
+		byId = new Vertex[graph.vertexCount()];
+		adjList = new TreeMap<String,Vertex>();
+		for (int v = 0; v < byId.length; v++)
+		{
+			byId[v] = new Vertex(graph.name(v));
+			byId[v].id = v;
+			adjList.put(byId[v].name, byId[v]);
+		}
+
+		friends = graph.neighbourIterator();
+		for (int v = 0; v < byId.length; v++)
+		{
+			friends.reset(v);
+			for (int friend; (friend = friends.next()) >= 0; )
+				byId[v].addNewFriend(byId[friend]);
+		}
+
+		return adjList;
+	}
+
+	/*
+	 * Returns the Vertex for name (null if there is none), for use with DFS() and unweightedDistances().
+	 */
+	public Vertex vertex(String name)
 	{
-		Vertex toAdd;
+		return vertices().get(name);
+	}
 
-		toAdd = new Vertex(key);
-		adjList.put(key, toAdd);
+	/*
+	 * Writes this graph as a BinaryGraphFile, which MappedGraph can open later without parsing anything.
+	 */
+	public void writeBinaryFile(String filePath) throws IOException
+	{
+		BinaryGraphFile.write(graph(), filePath);
 	}
 
 	/*
 	 * Prints out the information contained in the jpsam3.dsa.adjlist.Graph in a human-readable format.
-	 * For each vertex in the adjacency list, prints out the vertex followed by its adjacent vertices.
-	 ***Assuming that something is put into the TreeMap first.***
-	 ***Haven't put error checking in as it distracts from the actual implementation and use of the data structures.***
+	 * For each vertex, in name order, prints out the vertex followed by its adjacent vertices.
 	 */
 	public void printGraph()
 	{
-		Vertex currentVertex;
-		TreeSet<Vertex> currentFriendSet;
-		String currentString;
+		AdjacencyGraph graph;
+		NeighbourIterator friends;
 
+		graph = graph();
+		friends = graph.neighbourIterator();
 		System.out.printf("Adjacency list representation:\n");
-		currentString = adjList.firstKey();
-		do
+		for (int v = 0; v < graph.vertexCount(); v++)
 		{
-			currentVertex = adjList.get(currentString);
-			System.out.printf("%s -->", currentVertex.name);
-
-			currentFriendSet = currentVertex.friends;
-			for (Vertex friend : currentFriendSet)
-				System.out.printf("   %s", friend.name);
+			System.out.printf("%s -->", graph.name(v));
+			friends.reset(v);
+			for (int friend; (friend = friends.next()) >= 0; )
+				System.out.printf("   %s", graph.name(friend));
 			System.out.printf("\n");
 		}
-		while ((currentString = adjList.higherKey(currentString)) != null);
 	}
 
 	/*
@@ -105,9 +324,11 @@ public class GraphExtended
 	 */
 	public Vertex nextNotVisited()
 	{
+		TreeMap<String,Vertex> adjList;
 		Vertex currentVertex;
 		String currentString;
 
+		adjList = vertices();
 		currentString = adjList.firstKey();
 		do
 		{
@@ -137,9 +358,11 @@ public class GraphExtended
 	 */
 	public void resetVisited()
 	{
+		TreeMap<String,Vertex> adjList;
 		Vertex currentVertex;
 		String currentString;
 
+		adjList = vertices();
 		currentString = adjList.firstKey();
 		do
 		{
@@ -150,27 +373,21 @@ public class GraphExtended
 	}
 
 	/*
-	 * Handler method for the finding of groups. Calls BFS a number of times to find each group before calling printing method.
-	 * Also handles BFS's reseting of all Vertices' visit attribute (as we only want to call it once, not for each time BFS is called).
-	 * 		O(|V|) * O(BFS)
-	 * 	  =	O(|V| (|V| + |E|))
+	 * Finds the friendship groups (connected components) with ConnectedComponents over graph() and prints them.
+	 * 		O(|V| + |E|)
 	 */
 	public void findGroups()
 	{
-		ArrayList<TreeSet<Vertex>> setOfGroups;
-		Vertex currentVertex;
-
-		setOfGroups = new ArrayList<TreeSet<Vertex>>(MAX_GROUPS);	// makes ArrayList of TreeSets to contain friend groups with default size
-		resetVisited();												// resets visited Vertices from previous operations
-
-		currentVertex = adjList.get(adjList.firstKey());			// first vertex to operate on
-		do
-		{
-			setOfGroups.add(DFS(currentVertex));					// do BFSs to find groups until all found
-			currentVertex = nextNotVisited();
-		} while (!allVisited());
+		printGroups(groups());
+	}
 
-		printGroups(setOfGroups);									// prints outcome
+	/*
+	 * Returns the friendship groups as a component id per compact vertex id plus the size of each group.
+	 * Groups are numbered in order of their first member's name.
+	 */
+	public ConnectedComponents groups()
+	{
+		return ConnectedComponents.computeParallel(graph(), POOL);
 	}
 
 	/*
@@ -214,27 +431,36 @@ public class GraphExtended
 		return visitedVertices;
 	}
 
+	/*
+	 * Depth-first search from v, marking every Vertex it reaches as visited.
+	 * Returns TreeSet of all Vertices reached (including v), which will be v's friendship group.
+	 * Uses an explicit stack rather than recursion so long chains of friends can't overflow the call stack.
+	 *
+	 * O(|V| + |E|)
+	 */
 	public TreeSet<Vertex> DFS(Vertex v)
 	{
 		TreeSet<Vertex> visitedVertices;
+		Deque<Vertex> vStack;
+		Vertex currentVertex;
 
 		visitedVertices = new TreeSet<Vertex>();
-		return DFS(v, visitedVertices);
-	}
-
-	private TreeSet<Vertex> DFS(Vertex v, TreeSet<Vertex> visitedVertices)
-	{
-		TreeSet<Vertex> friendSet;
+		vStack = new ArrayDeque<Vertex>();
 
 		v.visited = true;
-		friendSet = v.friends;
-
-		for (Vertex friend : friendSet)
+		vStack.push(v);
+		while (!vStack.isEmpty())
 		{
-			if (!friend.visited)
+			currentVertex = vStack.pop();
+			visitedVertices.add(currentVertex);
+
+			for (Vertex friend : currentVertex.friends)
 			{
-				visitedVertices.add(friend);
-				return DFS(friend, visitedVertices);
+				if (!friend.visited)
+				{
+					friend.visited = true;
+					vStack.push(friend);
+				}
 			}
 		}
 		return visitedVertices;
@@ -242,60 +468,93 @@ public class GraphExtended
 
 	/*
 	 * Specialised print method for printing out friendship groups.
-	 * Iterates through the List of groups and prints out names for each Vertex in a group (separating groups by line break).
+	 * Prints the names in each group (separating groups by line break), in name order within a group.
 	 */
-	private void printGroups(ArrayList<TreeSet<Vertex>> groups)
+	private void printGroups(ConnectedComponents groups)
 	{
-		int groupNo = 1;
+		AdjacencyGraph graph;
+		int[] start, byGroup;
+
+		graph = graph();
+		start = new int[groups.count() + 1];				// bucket the vertices by group in one pass, keeping id order
+		for (int group = 0; group < groups.count(); group++)
+			start[group + 1] = start[group] + groups.size(group);
+		byGroup = new int[graph.vertexCount()];
+		for (int v = 0; v < byGroup.length; v++)
+			byGroup[start[groups.component(v)]++] = v;
 
 		System.out.printf("Friendship groups:\n");
-		for (TreeSet<Vertex> currentGroup : groups)
+		for (int group = 0, i = 0; group < groups.count(); group++)
 		{
-			if (!currentGroup.isEmpty())
-			{
-				System.out.printf("Group %d:  ", groupNo++);
+			System.out.printf("Group %d:  ", group + 1);
 
-				for (Vertex currentVertex : currentGroup)
-					System.out.printf("%s  ", currentVertex.name);
-				System.out.printf("\n");
-			}
+			for (int end = i + groups.size(group); i < end; i++)
+				System.out.printf("%s  ", graph.name(byGroup[i]));
+			System.out.printf("\n");
 		}
 	}
 
 	/*
-	 * Implements unweighted shortest path algorithm to set the distances of each Vertex in given graph in relation to Vertex v.
-	 * This is essentially a modified __BFS__ which updates distances relative to the starting Vertex each iteration.
+	 * Sets the distances of each Vertex in the graph in relation to Vertex v, then prints them.
+	 * The search itself is a parallel direction-optimizing BFS over graph(); see distancesFrom().
 	 *
 	 * O(|V| + |E|)
 	 */
 	public void unweightedDistances(Vertex v)
 	{
-		Queue<Vertex> vQueue;
-		Vertex currentVertex;
-		TreeSet<Vertex> friendSet;
+		int[] dist;
 
-		vQueue = new LinkedList<Vertex>();
+		dist = distancesFrom(v.name);
+		for (Vertex currentVertex : vertices().values())
+			currentVertex.distance = dist[currentVertex.id];
 
-		resetDistances();			// O(|V|) time
-		v.distance = 0;
-		vQueue.add(v);
+		printRelativeDistances(v);			// not related to actual distances algorithm
+	}
 
-		while (!vQueue.isEmpty())			// O(|V|) time
-		{
-			currentVertex = vQueue.remove();
-			friendSet = currentVertex.friends;
+	/*
+	 * Returns the distance of every vertex from the named one, indexed by graph() id (i.e. in sorted name
+	 * order), INF where unreachable. Doesn't touch the Vertex objects, so any number of these (and of
+	 * degreesOfSeparation()) can run at once, but not while edges are being added: callers must keep writers such as
+	 * handleLine(), addNewVertex() and readFile() apart from them.
+	 * Throws IllegalArgumentException if there is no vertex called name.
+	 */
+	public int[] distancesFrom(String name)
+	{
+		AdjacencyGraph graph;
 
-			for (Vertex friend : friendSet)						// for each friend of currentVertex--  O(|E|) time
-			{
-				if (friend.distance == INF)
-				{
-					friend.distance = currentVertex.distance +1;
-					vQueue.add(friend);
-				}
-			}
-		}
+		graph = graph();
+		return new ParallelBFS(graph, POOL).distances(vertexId(graph, name));
+	}
 
-		printRelativeDistances(v);			// not related to actual distances algorithm
+	/*
+	 * Batched version of distancesFrom(): row i holds every vertex's distance from names[i], indexed by graph()
+	 * id, INF where unreachable. Runs MultiSourceBFS, i.e. one traversal per 64 names rather than one per name.
+	 * Throws IllegalArgumentException if any of the names isn't a vertex.
+	 */
+	public int[][] degreesOfSeparation(String... names)
+	{
+		AdjacencyGraph graph;
+		int[] sources;
+
+		graph = graph();
+		sources = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+			sources[i] = vertexId(graph, names[i]);
+
+		return new MultiSourceBFS(graph).distances(sources, POOL);
+	}
+
+	/*
+	 * Looks up the id of a vertex that a query starts from, rejecting unknown names before they reach the searches.
+	 */
+	private static int vertexId(AdjacencyGraph graph, String name)
+	{
+		int id;
+
+		id = graph.id(name);
+		if (id < 0)
+			throw new IllegalArgumentException("No vertex named " + name);
+		return id;
 	}
 
 	/*
@@ -303,10 +562,12 @@ public class GraphExtended
 	 */
 	private void printRelativeDistances(Vertex v)
 	{
+		TreeMap<String,Vertex> adjList;
 		Vertex currentVertex;
 		String currentString;
 		int dist;
 
+		adjList = vertices();
 		System.out.printf("Relative distances:\n");
 		currentString = adjList.firstKey();
 		do									// for each Vertex in adjList, print distances
@@ -321,26 +582,9 @@ public class GraphExtended
 		while ((currentString = adjList.higherKey(currentString)) != null);
 	}
 
-	/*
-	 * For each Vertex in adjList, resets the distance attribute to default value of INF.
-	 */
-	private void resetDistances()
+	public static void main(String[] args) throws IOException
 	{
-		Vertex currentVertex;
-		String currentString;
-
-		currentString = adjList.firstKey();
-		do
-		{
-			currentVertex = adjList.get(currentString);
-			currentVertex.distance = INF;
-		}
-		while ((currentString = adjList.higherKey(currentString)) != null);
-	}
-
-	public static void main(String[] args)
-	{
-		GraphExtended testG;
+		GraphExtended testG, opened;
 
 		testG = new GraphExtended();
 		testG.readFile("names.txt");
@@ -348,7 +592,30 @@ public class GraphExtended
 		System.out.printf("\n\n");
 		testG.findGroups();
 		System.out.printf("\n\n");
-		testG.unweightedDistances(testG.adjList.get("Bernd"));
+		testG.unweightedDistances(testG.vertex("Bernd"));
+		System.out.printf("\n\nDegrees of separation (Bernd, Gerard): %s\n",
+				Arrays.deepToString(testG.degreesOfSeparation("Bernd", "Gerard")));
+
+		testG.writeBinaryFile("names.txt.bin");
+		opened = openBinaryFile("names.txt.bin");
+		System.out.printf("\nOpened from names.txt.bin: degrees of separation (Bernd, Gerard) %s, groupCount() %d\n",
+				Arrays.deepToString(opened.degreesOfSeparation("Bernd", "Gerard")), opened.groupCount());
+		opened.handleLine("Hans : Jon");
+		System.out.printf("After adding Hans : Jon to it: sameGroup(Bernd, Johannes) %b, groupCount() %d\n",
+				opened.sameGroup("Bernd", "Johannes"), opened.groupCount());
+		opened.close();
+		new File("names.txt.bin").delete();
+
+		testG.compress();
+		System.out.printf("Compressed: degrees of separation (Bernd, Gerard) %s, groups:\n",
+				Arrays.deepToString(testG.degreesOfSeparation("Bernd", "Gerard")));
+		testG.findGroups();
+
+		FriendGroups before = testG.groupsSnapshot();
+		testG.handleLine("Hans : Jon");
+		System.out.printf("\nAfter adding Hans : Jon: sameGroup(Bernd, Johannes) %b (snapshot before: %b), "
+				+ "groupSize(Hans) %d, groupCount() %d (snapshot before: %d)\n", testG.sameGroup("Bernd", "Johannes"),
+				before.sameGroup("Bernd", "Johannes"), testG.groupSize("Hans"), testG.groupCount(), before.groupCount());
 	}
 
 	/*
@@ -360,6 +627,7 @@ public class GraphExtended
 	{
 		public TreeSet<Vertex> friends;			// adjacency list for friends
 		public String name;
+		public int id;							// graph() id (set by vertices())
 		public int distance;
 		public boolean visited;
 
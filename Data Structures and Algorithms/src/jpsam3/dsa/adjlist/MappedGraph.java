@@ -0,0 +1,231 @@
+package jpsam3.dsa.adjlist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only graph served straight out of a memory-mapped BinaryGraphFile. Opening one maps the file and reads the
+ * header, nothing else; pages are faulted in by the OS as queries touch them and shared between processes. Safe to
+ * query from any number of threads.
+ */
+public class MappedGraph implements AdjacencyGraph, Closeable
+{
+	private static final int  SEGMENT_SHIFT = 30;					// 1 GB mappings; MappedByteBuffer is int-indexed.
+	private static final long SEGMENT_MASK  = (1L << SEGMENT_SHIFT) - 1;
+	private static final int  OVERLAP       = 8;					// So a long never straddles two segments.
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile   file;
+	private final MappedByteBuffer[] segments;
+	private final int  vertexCount;
+	private final long adjacencyCount;
+	private final long nameOffsetsPos, nameBytesPos, adjOffsetsPos, adjBytesPos, fileLength;
+
+	private MappedGraph(RandomAccessFile file) throws IOException
+	{
+		this.file = file;
+		FileChannel channel = file.getChannel();
+		long length = channel.size();
+
+		int segmentCount = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		segments = new MappedByteBuffer[Math.max(1, segmentCount)];
+		for (int i = 0; i < segments.length; i++)
+		{
+			long start = (long) i << SEGMENT_SHIFT;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.min((1L << SEGMENT_SHIFT) + OVERLAP, length - start));
+		}
+
+		if (length < BinaryGraphFile.HEADER_BYTES || segments[0].getInt(0) != BinaryGraphFile.MAGIC)
+			throw new IOException("Not a binary graph file");
+		if (segments[0].getInt(4) != BinaryGraphFile.VERSION)
+			throw new IOException("Unsupported binary graph file version " + segments[0].getInt(4));
+
+		vertexCount    = segments[0].getInt(8);
+		adjacencyCount = segments[0].getLong(16);
+		nameOffsetsPos = segments[0].getLong(24);
+		nameBytesPos   = segments[0].getLong(32);
+		adjOffsetsPos  = segments[0].getLong(40);
+		adjBytesPos    = segments[0].getLong(48);
+		fileLength     = segments[0].getLong(56);
+		if (fileLength != length)
+			throw new IOException("Binary graph file is truncated: " + length + " of " + fileLength + " bytes");
+	}
+
+	/**
+	 * Maps a file written by BinaryGraphFile.write().
+	 * @throws IOException If the file can't be mapped or isn't a complete binary graph file.
+	 */
+	public static MappedGraph open(String path) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			return new MappedGraph(file);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int vertexCount()
+	{
+		return vertexCount;
+	}
+
+	@Override
+	public long adjacencyCount()
+	{
+		return adjacencyCount;
+	}
+
+	/**
+	 * @return Bytes taken by the encoded neighbour lists.
+	 */
+	public long adjacencyBytes()
+	{
+		return fileLength - adjBytesPos;
+	}
+
+	@Override
+	public String name(int v)
+	{
+		long start = getLong(nameOffsetsPos + 8L * v);
+		int len = (int) (getLong(nameOffsetsPos + 8L * (v + 1)) - start);
+		byte[] bytes = new byte[len];
+		for (int i = 0; i < len; i++)
+			bytes[i] = getByte(nameBytesPos + start + i);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Binary searches the names, which are stored in sorted order.
+	 * @return Id of the named vertex, or -1 if there isn't one.
+	 */
+	@Override
+	public int id(String name)
+	{
+		int lo = 0, hi = vertexCount - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int cmp = name(mid).compareTo(name);
+			if (cmp < 0)
+				lo = mid + 1;
+			else if (cmp > 0)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	@Override
+	public int degree(int v)
+	{
+		return (int) readVarint(getLong(adjOffsetsPos + 8L * v) + adjBytesPos);
+	}
+
+	/**
+	 * Decodes v's neighbour list.
+	 * @return Neighbour ids, ascending.
+	 */
+	public int[] neighbours(int v)
+	{
+		long pos = getLong(adjOffsetsPos + 8L * v) + adjBytesPos;
+		int degree = (int) readVarint(pos);
+		pos += BinaryGraphFile.varintBytes(degree);
+
+		int[] neighbours = new int[degree];
+		int prev = 0;
+		for (int i = 0; i < degree; i++)
+		{
+			int gap = 0, shift = 0;
+			byte b;
+			do
+			{
+				b = getByte(pos++);
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			neighbours[i] = prev += gap;
+		}
+		return neighbours;
+	}
+
+	/**
+	 * Decodes lists straight out of the mapping, without copying them into an array as neighbours() does.
+	 */
+	@Override
+	public NeighbourIterator neighbourIterator()
+	{
+		return new NeighbourIterator() {
+			private long pos;
+			private int remaining, prev;
+
+			@Override
+			public void reset(int v)
+			{
+				pos = getLong(adjOffsetsPos + 8L * v) + adjBytesPos;
+				remaining = (int) readVarint(pos);
+				pos += BinaryGraphFile.varintBytes(remaining);
+				prev = 0;
+			}
+
+			@Override
+			public int next()
+			{
+				if (remaining == 0)
+					return -1;
+				remaining--;
+
+				int gap = 0, shift = 0;
+				byte b;
+				do
+				{
+					b = getByte(pos++);
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				return prev += gap;
+			}
+		};
+	}
+
+	/**
+	 * Drops the mappings and closes the file. The OS releases the mapped pages once they are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	private long readVarint(long pos)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = getByte(pos++);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private byte getByte(long pos)
+	{
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+	}
+
+	private long getLong(long pos)
+	{
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+	}
+}
@@ -0,0 +1,107 @@
+package jpsam3.dsa.adjlist;
+
+import java.util.Arrays;
+
+/**
+ * Interns vertex names into dense int ids 0, 1, 2, ... in the order they are first seen. Open addressing with linear
+ * probing over a power-of-two table, so a lookup is one hash and usually one String.equals(), with no boxing.
+ */
+final class NameTable
+{
+	private String[] keys;				// Slot -> name, null if empty.
+	private int[]    slotIds;			// Slot -> id of the name in that slot.
+	private String[] names;				// Id -> name.
+	private int      size;
+
+	NameTable()
+	{
+		this(16);
+	}
+
+	/**
+	 * @param expected Number of names expected, so the table can be sized once.
+	 */
+	NameTable(int expected)
+	{
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+		keys    = new String[capacity];
+		slotIds = new int[capacity];
+		names   = new String[Math.max(16, expected)];
+	}
+
+	/**
+	 * @return Id of name, or -1 if it has never been interned.
+	 */
+	int get(String name)
+	{
+		int mask = keys.length - 1;
+		for (int slot = hash(name) & mask; keys[slot] != null; slot = (slot + 1) & mask)
+			if (keys[slot].equals(name))
+				return slotIds[slot];
+		return -1;
+	}
+
+	/**
+	 * @return Id of name, giving it the next free id if it hasn't been seen before.
+	 */
+	int intern(String name)
+	{
+		int mask = keys.length - 1;
+		int slot;
+		for (slot = hash(name) & mask; keys[slot] != null; slot = (slot + 1) & mask)
+			if (keys[slot].equals(name))
+				return slotIds[slot];
+
+		if (size == names.length)
+			names = Arrays.copyOf(names, size * 2);
+		names[size] = name;
+		keys[slot] = name;
+		slotIds[slot] = size;
+		if (++size * 2 > keys.length)
+			rehash();
+		return size - 1;
+	}
+
+	String name(int id)
+	{
+		return names[id];
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Copy of all names, indexed by id.
+	 */
+	String[] names()
+	{
+		return Arrays.copyOf(names, size);
+	}
+
+	private void rehash()
+	{
+		keys    = new String[keys.length * 2];
+		slotIds = new int[keys.length];
+
+		int mask = keys.length - 1;
+		for (int id = 0; id < size; id++)
+		{
+			int slot = hash(names[id]) & mask;
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = names[id];
+			slotIds[slot] = id;
+		}
+	}
+
+	/**
+	 * String.hashCode() is cached per String but clusters badly in the low bits, so it is mixed before masking.
+	 */
+	private static int hash(String name)
+	{
+		int h = name.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
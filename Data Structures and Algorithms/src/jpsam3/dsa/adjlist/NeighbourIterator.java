@@ -0,0 +1,23 @@
+package jpsam3.dsa.adjlist;
+
+/**
+ * Allocation-free cursor over an AdjacencyGraph's neighbour lists:
+ *
+ *     it.reset(v);
+ *     for (int u; (u = it.next()) >= 0; )
+ *         ...
+ *
+ * Neighbours come out in ascending id order.
+ */
+public interface NeighbourIterator
+{
+	/**
+	 * Positions the cursor at the start of v's neighbour list.
+	 */
+	void reset(int v);
+
+	/**
+	 * @return Next neighbour of the vertex last reset() to, or -1 once the list is exhausted.
+	 */
+	int next();
+}
@@ -0,0 +1,286 @@
+package jpsam3.dsa.adjlist;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Direction-optimizing breadth-first search over an AdjacencyGraph, run level by level on a ForkJoinPool
+ * (S. Beamer, K. Asanovic, D. Patterson, "Direction-Optimizing Breadth-First Search", SC 2012).
+ *
+ * Frontiers are bitmaps with one bit per vertex. Each level is either top-down (every frontier vertex claims its
+ * unvisited neighbours) or bottom-up (every unvisited vertex looks for any neighbour in the frontier, stopping at the
+ * first). Top-down is cheap while the frontier is small; bottom-up wins once the frontier holds a large share of the
+ * remaining edges, which on low-diameter social graphs is the case for the few levels that do most of the work. The
+ * switch is Beamer's heuristic: go bottom-up when frontier edges exceed unexplored edges / ALPHA, go back to top-down
+ * once the frontier shrinks below n / BETA vertices.
+ *
+ * Work is split over ranges of 64-vertex bitmap words. Top-down claims vertices with a CAS on the visited bitmap, so
+ * each vertex joins the next frontier exactly once; bottom-up tasks only ever write the words they own.
+ */
+public class ParallelBFS
+{
+	public static final int INF = -1;						// Distance of an unreachable vertex.
+
+	private static final int ALPHA = 14;
+	private static final int BETA  = 24;
+	private static final int WORDS_PER_TASK = 64;			// 4096 vertices per fork-join leaf.
+
+	private final AdjacencyGraph graph;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param graph Graph to search; it is immutable, so any number of searches can share it.
+	 * @param pool Pool the levels run on.
+	 */
+	public ParallelBFS(AdjacencyGraph graph, ForkJoinPool pool)
+	{
+		this.graph = graph;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param source Vertex id to search from.
+	 * @return Distance in edges from source for every vertex id, INF for vertices it can't reach.
+	 * @throws IndexOutOfBoundsException If source isn't a vertex id of the graph.
+	 */
+	public int[] distances(int source)
+	{
+		int n = graph.vertexCount();
+		if (source < 0 || source >= n)
+			throw new IndexOutOfBoundsException("Source " + source + " not in [0, " + n + ")");
+		int words = (n + 63) >>> 6;
+
+		Search search = new Search(n, words);
+		search.dist[source] = 0;
+		search.visited.set(source >>> 6, 1L << source);
+		search.frontier.set(source >>> 6, 1L << source);
+
+		long frontierSize = 1, prevSize = 0;
+		long frontierEdges = graph.degree(source);
+		long unexploredEdges = graph.adjacencyCount() - frontierEdges;
+		boolean bottomUp = false;
+
+		for (int level = 0; frontierSize > 0; level++)
+		{
+			if (!bottomUp && frontierEdges > unexploredEdges / ALPHA)
+				bottomUp = true;
+			else if (bottomUp && frontierSize < prevSize && frontierSize < n / BETA)
+				bottomUp = false;
+
+			Step step = new Step(search, level + 1, bottomUp, 0, words);
+			pool.invoke(step);
+
+			prevSize = frontierSize;
+			frontierSize = step.size;
+			frontierEdges = step.edges;
+			unexploredEdges -= frontierEdges;
+
+			AtomicLongArray swap = search.frontier;			// next becomes the frontier; the old frontier is cleared for reuse.
+			search.frontier = search.next;
+			search.next = swap;
+			for (int w = 0; w < words; w++)
+				swap.set(w, 0);
+		}
+		return search.dist;
+	}
+
+	/**
+	 * State of one search, shared by all tasks of its levels.
+	 */
+	private static class Search
+	{
+		private final int n;
+		private final int[] dist;
+		private final AtomicLongArray visited;
+		private AtomicLongArray frontier, next;
+
+		private Search(int n, int words)
+		{
+			this.n = n;
+			dist = new int[n];
+			Arrays.fill(dist, INF);
+			visited  = new AtomicLongArray(words);
+			frontier = new AtomicLongArray(words);
+			next     = new AtomicLongArray(words);
+		}
+	}
+
+	/**
+	 * Runs one level over bitmap words [lo, hi), recording the size and edge count of the frontier it builds.
+	 */
+	private class Step extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Search search;
+		private final int level;				// Distance given to newly reached vertices.
+		private final boolean bottomUp;
+		private final int lo, hi;
+		private long size, edges;
+
+		private Step(Search search, int level, boolean bottomUp, int lo, int hi)
+		{
+			this.search = search;
+			this.level = level;
+			this.bottomUp = bottomUp;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (hi - lo > WORDS_PER_TASK)
+			{
+				int mid = (lo + hi) >>> 1;
+				Step left  = new Step(search, level, bottomUp, lo, mid);
+				Step right = new Step(search, level, bottomUp, mid, hi);
+				invokeAll(left, right);
+				size  = left.size + right.size;
+				edges = left.edges + right.edges;
+			} else if (bottomUp) {
+				bottomUp();
+			} else {
+				topDown();
+			}
+		}
+
+		private void topDown()
+		{
+			int[] dist = search.dist;
+			NeighbourIterator neighbours = graph.neighbourIterator();
+
+			for (int w = lo; w < hi; w++)
+			{
+				for (long bits = search.frontier.get(w); bits != 0; bits &= bits - 1)
+				{
+					neighbours.reset(w << 6 | Long.numberOfTrailingZeros(bits));
+					for (int u; (u = neighbours.next()) >= 0; )
+					{
+						if (dist[u] == INF && claim(search.visited, u))	// Plain read first skips most CASes.
+						{
+							dist[u] = level;
+							setBit(search.next, u);
+							size++;
+							edges += graph.degree(u);
+						}
+					}
+				}
+			}
+		}
+
+		private void bottomUp()
+		{
+			int[] dist = search.dist;
+			NeighbourIterator neighbours = graph.neighbourIterator();
+			AtomicLongArray frontier = search.frontier;
+
+			for (int w = lo; w < hi; w++)
+			{
+				long unvisited = ~search.visited.get(w);
+				if (w == (search.n - 1) >>> 6 && (search.n & 63) != 0)
+					unvisited &= (1L << search.n) - 1;		// No vertices past n in the last word.
+
+				long found = 0;
+				for (long bits = unvisited; bits != 0; bits &= bits - 1)
+				{
+					int v = w << 6 | Long.numberOfTrailingZeros(bits);
+					neighbours.reset(v);
+					for (int u; (u = neighbours.next()) >= 0; )
+					{
+						if ((frontier.get(u >>> 6) & (1L << u)) != 0)
+						{
+							dist[v] = level;
+							found |= 1L << v;
+							size++;
+							edges += graph.degree(v);
+							break;
+						}
+					}
+				}
+
+				if (found != 0)								// This task owns word w, so no CAS needed.
+				{
+					search.visited.set(w, ~unvisited | found);
+					search.next.set(w, found);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Atomically sets v's bit in bits.
+	 * @return True if this call set it, false if it was already set.
+	 */
+	private static boolean claim(AtomicLongArray bits, int v)
+	{
+		int w = v >>> 6;
+		long mask = 1L << v;
+		long old;
+		do
+		{
+			old = bits.get(w);
+			if ((old & mask) != 0)
+				return false;
+		} while (!bits.compareAndSet(w, old, old | mask));
+		return true;
+	}
+
+	private static void setBit(AtomicLongArray bits, int v)
+	{
+		int w = v >>> 6;
+		long mask = 1L << v;
+		long old;
+		do
+			old = bits.get(w);
+		while ((old & mask) == 0 && !bits.compareAndSet(w, old, old | mask));
+	}
+
+	/* Some tests: random low-diameter graph, checked against a plain queue BFS. Optional argument: vertex count. */
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random rand = new Random(14);
+
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (int v = 0; v < n; v++)
+			builder.addVertex(Integer.toString(v));
+		for (int e = 0; e < 8L * n; e++)
+			builder.addEdge(rand.nextInt(n), rand.nextInt(n));
+		CompactGraph graph = builder.build();
+
+		ForkJoinPool pool = new ForkJoinPool();
+		ParallelBFS bfs = new ParallelBFS(graph, pool);
+		int source = graph.id("0");
+
+		for (int i = 0; i < 5; i++)							// Warm up.
+			bfs.distances(source);
+		long start = System.nanoTime();
+		int[] dist = bfs.distances(source);
+		long time = System.nanoTime() - start;
+
+		int[] expected = new int[n];
+		Arrays.fill(expected, INF);
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		expected[source] = 0;
+		queue.add(source);
+		while (!queue.isEmpty())
+		{
+			int v = queue.remove();
+			for (int i = graph.offset(v); i < graph.offset(v + 1); i++)
+				if (expected[graph.target(i)] == INF)
+				{
+					expected[graph.target(i)] = expected[v] + 1;
+					queue.add(graph.target(i));
+				}
+		}
+
+		System.out.printf("%d vertices, %d adjacency entries, %d threads: %.1f ms, %s%n", n, graph.adjacencyCount(),
+				pool.getParallelism(), time / 1e6, Arrays.equals(dist, expected) ? "matches" : "MISMATCH");
+		pool.shutdown();
+	}
+}
@@ -6,18 +6,78 @@ package jpsam3.dsa.bipartitegraph;
  */
 
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Arrays;
 import java.util.TreeMap;
-import java.util.TreeSet;
-
-public class BipartiteGraphChecker
+import java.util.concurrent.ForkJoinPool;
+
+import jpsam3.dsa.adjlist.AdjacencyGraph;
+import jpsam3.dsa.adjlist.BinaryGraphFile;
+import jpsam3.dsa.adjlist.CompactGraph;
+import jpsam3.dsa.adjlist.ConnectedComponents;
+import jpsam3.dsa.adjlist.EdgeListLoader;
+import jpsam3.dsa.adjlist.MappedGraph;
+import jpsam3.dsa.adjlist.NeighbourIterator;
+import jpsam3.dsa.disjointsets.ParityDisjointSet;
+
+public class BipartiteGraphChecker implements Closeable
 {
-    private enum Colour {RED, BLUE}
+    public enum Colour {RED, BLUE}
+
+	private CompactGraph.Builder       edges;			// The graph itself, laid out as CSR by toCompactGraph().
+	private ParityDisjointSet          sides;			// Online two-colouring, updated per edge (indexed by edges' ids);
+														// null until needed for a graph from openBinaryFile().
+	private MappedGraph                mapped;			// Binary file the graph was opened from, null if none.
+	private String                     firstConflict;	// First edge that made the graph non-bipartite, null if none.
+	private TreeMap<String,String>     matching;		// Last maximumMatching() result, reused as its warm start.
+
+    public BipartiteGraphChecker()
+    {
+        edges   = new CompactGraph.Builder();
+        sides   = new ParityDisjointSet(0);
+        matching = new TreeMap<>();
+    }
 
-	private final TreeMap<String,Vertex> adjList;
+    /**
+     * Opens a file written by writeBinaryFile() without reading it in: bipartiteDetect() and maximumMatching() run
+     * straight on the mapped file until the graph is changed or laid out by toCompactGraph(), which copy it into memory.
+     * The online two-colouring is worked out on first use. The file stays open until close().
+     * @param filePath Path to the binary graph file.
+     * @return The graph.
+     * @throws IOException If the file can't be mapped or isn't a binary graph file.
+     */
+	public static BipartiteGraphChecker openBinaryFile(String filePath) throws IOException
+	{
+		BipartiteGraphChecker graph = new BipartiteGraphChecker();
+		graph.mapped = MappedGraph.open(filePath);
+		graph.edges  = new CompactGraph.Builder(graph.mapped);
+		graph.sides  = null;
+		return graph;
+	}
 
-    public BipartiteGraphChecker() { adjList = new TreeMap<>(); }
+    /**
+     * Closes the binary file the graph was opened from, after which it can't be used. Does nothing for other graphs.
+     */
+	@Override
+	public void close() throws IOException
+	{
+		if (mapped != null)
+			mapped.close();
+	}
+
+    /**
+     * Writes this graph as a BinaryGraphFile, which openBinaryFile() can open later without parsing anything.
+     * @param filePath Path to write to, replacing anything there.
+     * @throws IOException If the file can't be written.
+     */
+	public void writeBinaryFile(String filePath) throws IOException
+	{
+		BinaryGraphFile.write(edges.graph(), filePath);
+	}
 
     /**
      * Reads the given file and sends each line to be handled by handleLine()
@@ -41,204 +101,314 @@ public class BipartiteGraphChecker
 	}
 
     /**
-     * Handles readLine by inserting Vertex and specified friends into adjList if not already there.
+     * Same as handleFile(), but parses the file into the graph with EdgeListLoader (memory-mapped, on all cores) and
+     * lays it out with the neighbour lists sorted on all cores. If the graph is still bipartite, sides is brought up to
+     * date from a parallel TwoColouring with one union per vertex; otherwise every edge goes through sides, as in
+     * handleLine(), to find the first conflicting one (first in id order, since the file was parsed in parallel).
+     * @param filePath Path to file containing data.
+     */
+	public void handleFileParallel(String filePath) throws RuntimeException
+	{
+		sides();											// Before the graph changes.
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			EdgeListLoader.loadInto(edges, filePath, " ", pool);
+			while (sides.size() < edges.vertexCount())
+				sides.add();
+
+			addToSides(edges.build(pool), pool);
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occurred.");
+			e.printStackTrace();
+			throw new RuntimeException();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+    /**
+     * Handles readLine by inserting both vertices and the edge between them into the graph if not already there, and
+     * updates the online bipartite status in O(a(n)) amortised.
      * @param readLine Line to be handled as String.
      */
-	private void handleLine(String readLine)
+	public void handleLine(String readLine)
 	{
 		String[] vertices = readLine.split(" ");
 
-		for (String vertex : vertices)				// For each Vertex, add to adjList if not already there.
-			if (!adjList.containsKey(vertex))
-				addNewVertex(vertex);
+		int a = addNewVertex(vertices[0]);
+		int b = addNewVertex(vertices[1]);
+		edges.addEdge(a, b);							// Both directions; repeats are dropped when the CSR is built.
+		addToSides(a, b, vertices[0], vertices[1]);
+	}
 
-		Vertex vertexA = adjList.get(vertices[0]);
-		Vertex vertexB = adjList.get(vertices[1]);
+    /**
+     * Records that a and b must be on opposite sides, remembering the edge if it can't be.
+     */
+	private void addToSides(int a, int b, String nameA, String nameB)
+	{
+		if (!sides().union(a, b, 1) && firstConflict == null)
+			firstConflict = nameA + " " + nameB;
+	}
 
-		if (!vertexA.alreadyNeighbours(vertexB))	// Adds new edge to given name's friend list if not already there.
-			vertexA.addNewNeighbour(vertexB);
+    /**
+     * Brings sides up to date with graph, the graph edges last built or served, which holds every edge sides has seen.
+     * If it's still bipartite that takes a TwoColouring and one union per vertex; otherwise every edge goes through
+     * sides, to find the first conflicting one (first in id order, as graph's edges have no other order).
+     * @param pool Pool to colour on, or null to colour on the calling thread.
+     */
+	private void addToSides(AdjacencyGraph graph, ForkJoinPool pool)
+	{
+		TwoColouring colouring = null;
+		if (firstConflict == null)
+			colouring = pool == null ? TwoColouring.compute(graph) : TwoColouring.computeParallel(graph, pool);
+
+		if (colouring != null && colouring.isBipartite())
+			addToSides(graph, colouring,
+					pool == null ? ConnectedComponents.compute(graph) : ConnectedComponents.computeParallel(graph, pool));
+		else
+			addToSides(graph);
+	}
 
-		if (!vertexB.alreadyNeighbours(vertexA))	// Same as above, but for second name in line.
-			vertexB.addNewNeighbour(vertexA);
+    /**
+     * Adds every edge of graph to sides, each once, from its higher end.
+     */
+	private void addToSides(AdjacencyGraph graph)
+	{
+		NeighbourIterator neighbours = graph.neighbourIterator();
+		for (int v = 0; v < graph.vertexCount(); v++)
+		{
+			neighbours.reset(v);
+			for (int u; (u = neighbours.next()) >= 0 && u <= v; )
+				addToSides(edges.builderId(v), edges.builderId(u), graph.name(v), graph.name(u));
+		}
 	}
 
     /**
-     * Simple method to add a new vertex to our adjacency list.
-     * @param key Key found in data file.
+     * Puts every vertex of a bipartite graph on its side relative to the first vertex of its component. The graph holds
+     * every edge sides has seen, so this agrees with what sides already knows.
      */
-	private void addNewVertex(String key)
+	private void addToSides(AdjacencyGraph graph, TwoColouring colouring, ConnectedComponents components)
 	{
-		Vertex toAdd = new Vertex(key);
-		adjList.put(key, toAdd);
+		int[] first = new int[components.count()];
+		Arrays.fill(first, -1);
+		for (int v = 0; v < graph.vertexCount(); v++)
+		{
+			int c = components.component(v);
+			if (first[c] < 0)
+				first[c] = v;
+			else
+				sides.union(edges.builderId(first[c]), edges.builderId(v), colouring.colour(first[c]) ^ colouring.colour(v));
+		}
 	}
 
-	/**
-	 * Prints out the information contained in the Graph in a human-readable format.
-	 * For each vertex in the adjacency list, prints out the vertex followed by its adjacent vertices.
-	 ***Assuming that something is put into the TreeMap first.***
-	 ***Haven't put error checking in as it distracts from the actual implementation and use of the data structures.***
-	 */
-	public void printGraph()
+    /**
+     * @return The online two-colouring, first worked out from the graph if it came from openBinaryFile().
+     */
+	private ParityDisjointSet sides()
 	{
-		System.out.printf("Adjacency list representation:%n");
-		String currentString = adjList.firstKey();
-		do
+		if (sides == null)
 		{
-			Vertex currentVertex = adjList.get(currentString);
-			System.out.printf("%s -->", currentVertex.name);
+			sides = new ParityDisjointSet(edges.vertexCount());
+			addToSides(edges.graph(), null);
+		}
+		return sides;
+	}
 
-			TreeSet<Vertex> currentFriendSet = currentVertex.neighbours;
-			for (Vertex friend : currentFriendSet)
-            	System.out.printf("   %s", friend.name);
+    /**
+     * Adds a vertex with no edges, and its singleton set in sides, unless it's already in the graph.
+     * @param key Key found in data file.
+     * @return The vertex's id in edges and sides.
+     */
+	private int addNewVertex(String key)
+	{
+		sides();										// Before the graph changes.
+		int id = edges.addVertex(key);
+		if (id == sides.size())						// New vertex; ids are handed out in order.
+			sides.add();
+		return id;
+	}
 
-			System.out.printf("%n");
-		} while ((currentString = adjList.higherKey(currentString)) != null);
+    /**
+     * Answered from the online parity union-find, without a traversal.
+     * @return Whether the graph is bipartite with every edge added so far.
+     */
+	public boolean isBipartite()
+	{
+		sides();
+		return firstConflict == null;
 	}
 
     /**
-     * Finds and returns the next Vertex in adjList with visited == false. If none, returns null.
-     * @return Next unvisited Vertex object or null if all visited.
+     * @return The first edge, as its "a b" line, that closed an odd cycle, or null if the graph is still bipartite.
      */
-	private Vertex nextNotVisited()
+	public String firstConflict()
 	{
-		String currentString = adjList.firstKey();
-		do
-		{
-			Vertex currentVertex = adjList.get(currentString);
-			if (!currentVertex.visited)
-                return currentVertex;
-		} while ((currentString = adjList.higherKey(currentString)) != null);
+		sides();
+		return firstConflict;
+	}
+
+    /**
+     * Current colour of a vertex in the online two-colouring. Colours are only fixed relative to the rest of the
+     * vertex's component, so they can all flip when two components are joined.
+     * @param name Vertex to look up.
+     * @return BLUE or RED, or null if there is no such vertex.
+     * @throws IllegalStateException If the graph isn't bipartite.
+     */
+	public Colour colourOf(String name)
+	{
+		if (!isBipartite())
+			throw new IllegalStateException("Graph is not bipartite since edge " + firstConflict);
 
-		return null;			// Return null if all visited.
+		int v = edges.id(name);
+		if (v < 0)
+			return null;
+		return sides().parity(v) == 0 ? Colour.BLUE : Colour.RED;
 	}
 
     /**
-     * Uses nextNotVisited() to determine if any Vertex is not visited as it returns null if all visited.
-     * @return Boolean value denoting whether or not all Vertices in graph have been visited.
+     * @return Whether both vertices exist and must be on the same side (same component, same colour).
      */
-	private boolean allVisited() { return nextNotVisited() == null; }
+	public boolean sameSide(String name1, String name2)
+	{
+		int a = edges.id(name1), b = edges.id(name2);
+		return a >= 0 && b >= 0 && sides().sameSide(a, b);
+	}
+
+	/**
+	 * Prints out the information contained in the Graph in a human-readable format.
+	 * For each vertex, in name order, prints out the vertex followed by its adjacent vertices.
+	 */
+	public void printGraph()
+	{
+		System.out.printf("Adjacency list representation:%n");
+		toCompactGraph().printGraph();
+	}
 
 	/**
-	 * Resets all Vertices in adjList to default state of visited = false.
+	 * Lays the graph out as CSR, with ids in name order. Only the edges added since the last call are laid out again.
+	 * @return Immutable int-indexed form of the graph, the same object as last time if nothing was added since.
 	 */
-	private void resetVisited()
+	public CompactGraph toCompactGraph()
 	{
-		String currentString = adjList.firstKey();
-		do
-            adjList.get(currentString).visited = false;
-		while ((currentString = adjList.higherKey(currentString)) != null);
+		return edges.build();
 	}
 
 	/**
 	 * Detects whether or not graph is bipartite. Graph does not have to be all connected.
+	 * Prints an odd cycle when it isn't.
+	 * @return The colouring, or the odd cycle that rules one out.
 	 */
-	public void bipartiteDetect()
+	public TwoColouring bipartiteDetect()
 	{
-		boolean isBipartite = true;
-		resetVisited();
+		return bipartiteDetect(null);
+	}
 
-		while (allVisited())
+	/**
+	 * Same as bipartiteDetect(), with the components coloured in parallel on pool (sequentially if pool is null).
+	 */
+	public TwoColouring bipartiteDetect(ForkJoinPool pool)
+	{
+		AdjacencyGraph graph = edges.graph();
+		TwoColouring result = pool == null ? TwoColouring.compute(graph) : TwoColouring.computeParallel(graph, pool);
+
+		if (result.isBipartite())
 		{
-			Vertex v = nextNotVisited();
-			v.colour = Colour.BLUE;
-
-			if (!DFS(v))
-			{
-				isBipartite = false;
-				break;
-			}
+			System.out.printf("Graph is bipartite.%n");
+		} else {
+			System.out.printf("Graph is _not_ bipartite. Odd cycle:");
+			for (int v : result.oddCycle())
+				System.out.printf(" %s", graph.name(v));
+			System.out.printf("%n");
 		}
-
-		if (isBipartite)	System.out.printf("Graph is bipartite.%n");
-		else                System.out.printf("Graph is _not_ bipartite.%n");
+		return result;
 	}
 
-    /**
-     * A slightly modified DFS algorithm on the graph to making it two-coloured and at the same time checking colours of
-     * neighbouring Vertices.
-     * @param v Vertex to perform DFS on.
-     * @return Boolean value denoting whether or not the bipartite graph rules have been violated.
-     */
-	private boolean DFS(Vertex v)
+	/**
+	 * Finds a maximum matching between the two sides with HopcroftKarp, warm-started from the matching the previous
+	 * call returned, so after adding a batch of edges only the new augmenting paths have to be found. The sides are
+	 * read off the online two-colouring, so no traversal is needed to find them.
+	 * @return Every matched vertex mapped to its mate (so each pair appears twice).
+	 * @throws IllegalStateException If the graph isn't bipartite.
+	 */
+	public TreeMap<String,String> maximumMatching()
 	{
-		TreeSet<Vertex> neighbourSet = v.neighbours;
-        v.visited = true;
+		if (!isBipartite())
+			throw new IllegalStateException("Graph is not bipartite since edge " + firstConflict);
+
+		AdjacencyGraph graph = edges.graph();
+		byte[] colours = new byte[graph.vertexCount()];
+		for (int v = 0; v < colours.length; v++)
+			colours[v] = (byte) sides.parity(edges.builderId(v));
+		HopcroftKarp matcher = new HopcroftKarp(graph, colours);
 
-		for (Vertex neighbour : neighbourSet)
+		for (Map.Entry<String,String> pair : matching.entrySet())
 		{
-			if (!neighbour.visited)
-			{
-				neighbour.colour = v.nextColour();	        // Colour current neighbour with different colour to v.
-				if (!DFS(neighbour))    return false;
-			} else if (neighbour.colour.equals(v.colour))	// If colour is the same as adjacent Vertex.
-            {
-				return false;
-            }
+			int v = graph.id(pair.getKey());
+			if (colours[v] == 0)							// Each pair once, from its left end.
+				matcher.match(v, graph.id(pair.getValue()));
 		}
-		return true;	// Only reaches here if for each neighbour of v, they don't violate bipartite rules.
-	}
-
+		matcher.maximumMatching();
 
+		matching = new TreeMap<>();
+		for (int v = 0; v < graph.vertexCount(); v++)
+			if (matcher.mate(v) >= 0)
+				matching.put(graph.name(v), graph.name(matcher.mate(v)));
+		return new TreeMap<>(matching);
+	}
 
     /* Some tests */
-	public static void main(String[] args)
+	public static void main(String[] args) throws IOException
 	{
 		BipartiteGraphChecker testG = new BipartiteGraphChecker();
 		testG.handleFile("src/jpsam3/dsa/bipartitegraph/edges.txt");
 		testG.printGraph();
 		System.out.printf("%n");
 		testG.bipartiteDetect();
-	}
-
-	/**
-	 * Used for creating Vertex objects. They each have a name and 'visited' attributes.
-	 * They also contain a TreeSet of Vertices called neighbours which essentially provides an adjacency list
-     * implementation for Graphs as the Graph object will be made as a TreeMap which maps Strings to Vertices
-     * (each Vertex containing a TreeSet of friend Vertices).
-	 */
-	private static class Vertex implements Comparable<Vertex>
-	{
-		private TreeSet<Vertex> neighbours;		// Adjacency list for friends.
-		private final String    name;
-        private Colour          colour;
-		private boolean         visited;
-
-		private Vertex(String initName)
-		{
-            neighbours = new TreeSet<>();
-			name       = initName;
-			visited    = false;
-		}
-
-        /**
-         * Checks if this Vertex is already friends with neighbour Vertex.
-         * @param neighbour Neighbouring Vertex to check friendship status against.
-         * @return Boolean value denoting whether or not this Vertex is friends with neighbour Vertex.
-         */
-		private boolean alreadyNeighbours(Vertex neighbour) { return neighbours.contains(neighbour); }
-
-        /**
-         * Really simple method used for making the handleLine() code clearer and more reader-friendly.
-         * @param newNeighbour Vertex to add to this.neighbours.
-         */
-		private void addNewNeighbour(Vertex newNeighbour) { neighbours.add(newNeighbour); }
-
-        /**
-         * @return Next colour from this.colour.
-         */
-		private Colour nextColour()
-		{
-			if (this.colour == Colour.RED)
-				return Colour.BLUE;
-			return Colour.RED;
+		System.out.printf("Online: bipartite %b, first conflicting edge %s%n", testG.isBipartite(), testG.firstConflict());
+		BipartiteGraphChecker parallel = new BipartiteGraphChecker();
+		parallel.handleFileParallel("src/jpsam3/dsa/bipartitegraph/edges.txt");
+		System.out.printf("Parallel load: bipartite %b, %d adjacency entries (handleFile: %d)%n", parallel.isBipartite(),
+				parallel.toCompactGraph().adjacencyCount(), testG.toCompactGraph().adjacencyCount());
+
+		BipartiteGraphChecker online = new BipartiteGraphChecker();
+		online.handleLine("1 5");
+		online.handleLine("5 2");
+		online.handleLine("2 6");
+		System.out.printf("%nOnline after 1 5, 5 2, 2 6: bipartite %b, colours 1 %s 5 %s 6 %s, sameSide(1, 2) %b%n",
+				online.isBipartite(), online.colourOf("1"), online.colourOf("5"), online.colourOf("6"),
+				online.sameSide("1", "2"));
+		online.handleLine("6 5");
+		System.out.printf("After 6 5: bipartite %b, first conflicting edge %s%n", online.isBipartite(),
+				online.firstConflict());
+
+		BipartiteGraphChecker jobs = new BipartiteGraphChecker();
+		jobs.handleLine("ann cook");
+		jobs.handleLine("bob cook");
+		jobs.handleLine("bob driver");
+		System.out.printf("%nMatching: %s%n", jobs.maximumMatching());
+		jobs.handleLine("cat driver");
+		jobs.handleLine("cat nurse");
+		System.out.printf("After adding cat: %s%n", jobs.maximumMatching());
+		try {
+			online.maximumMatching();
+		} catch (IllegalStateException e) {
+			System.out.printf("Matching on the non-bipartite graph: %s%n", e.getMessage());
 		}
 
-        /**
-         * Allows Vertex objects to be compared by their name (mainly used for ordering in TreeMap/TreeSets).
-         * @param o Vertex to compare this to.
-         * @return Integer value following the standard Java compareTo() return values.
-         */
-        @Override
-		public int compareTo(Vertex o) { return this.name.compareTo(o.name); }
+		jobs.writeBinaryFile("jobs.bin");
+		BipartiteGraphChecker reopened = openBinaryFile("jobs.bin");
+		System.out.printf("%nOpened from jobs.bin: bipartite %b, sameSide(ann, cat) %b, matching %s%n",
+				reopened.isBipartite(), reopened.sameSide("ann", "cat"), reopened.maximumMatching());
+		reopened.handleLine("dan nurse");
+		reopened.handleLine("dan chef");
+		System.out.printf("After adding dan: %s%n", reopened.maximumMatching());
+		reopened.close();
+
+		testG.writeBinaryFile("jobs.bin");
+		reopened = openBinaryFile("jobs.bin");
+		System.out.printf("Opened %s from jobs.bin: bipartite %b, first conflicting edge %s%n", "edges.txt",
+				reopened.isBipartite(), reopened.firstConflict());
+		reopened.close();
+		new File("jobs.bin").delete();
 	}
-}
\ No newline at end of file
+}
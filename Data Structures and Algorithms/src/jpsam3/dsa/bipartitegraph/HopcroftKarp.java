@@ -0,0 +1,276 @@
+package jpsam3.dsa.bipartitegraph;
+
+import java.util.Arrays;
+
+import jpsam3.dsa.adjlist.AdjacencyGraph;
+import jpsam3.dsa.adjlist.NeighbourIterator;
+
+/**
+ * Maximum matching in a bipartite graph by Hopcroft-Karp (J. Hopcroft, R. Karp, "An n^5/2 Algorithm for Maximum
+ * Matchings in Bipartite Graphs", SIAM J. Comput. 1973), O(E sqrt(V)).
+ *
+ * The two sides come from a TwoColouring, or any colour array that two-colours the graph: colour 0 vertices are the
+ * left side. Their neighbour lists are copied once into CSR arrays so all the work is on int arrays: mateLeft/mateRight
+ * for the matching, dist for the BFS layers, and an explicit stack plus a per-vertex edge cursor for the DFS, so long
+ * augmenting paths can't overflow the call stack. Each phase BFSes from every free left vertex to find the shortest
+ * augmenting path length, then augments along a maximal set of vertex-disjoint paths of that length; there are at most
+ * 2 sqrt(V) phases.
+ *
+ * Starting from a greedy matching, or from a previous matching given through match() (a warm start after edges were
+ * added), only the missing augmenting paths have to be found, which usually takes a handful of phases.
+ */
+public class HopcroftKarp
+{
+	private static final int INF = Integer.MAX_VALUE;
+
+	private final int[] leftIndex;			// Vertex -> index among the left vertices, -1 for right vertices.
+	private final int[] leftVertex;			// Left index -> vertex.
+	private final int[] offsets;			// Left index -> start of its neighbours in targets.
+	private final int[] targets;			// Right-side neighbour vertex ids.
+
+	private final int[] mateLeft;			// Left index -> matched vertex, -1 if free.
+	private final int[] mateRight;			// Vertex -> left index of its mate, -1 if free (only used for right vertices).
+	private final int[] dist;
+	private final int[] cursor;
+	private final int[] queue, stack;
+	private int size, phases;
+
+	/**
+	 * @param graph Bipartite graph.
+	 * @param colouring Its two-colouring.
+	 * @throws IllegalStateException If colouring says the graph isn't bipartite.
+	 */
+	public HopcroftKarp(AdjacencyGraph graph, TwoColouring colouring)
+	{
+		this(graph, colouring.colours());
+	}
+
+	/**
+	 * @param graph Bipartite graph.
+	 * @param colours Side of every vertex, 0 for left and 1 for right, such that every edge joins the two sides (e.g.
+	 * parities from a ParityDisjointSet the edges were added to).
+	 */
+	public HopcroftKarp(AdjacencyGraph graph, byte[] colours)
+	{
+		int n = graph.vertexCount(), left = 0;
+		long adjacency = 0;
+
+		leftIndex = new int[n];
+		for (int v = 0; v < n; v++)
+		{
+			if (colours[v] == 0)
+			{
+				leftIndex[v] = left++;
+				adjacency += graph.degree(v);
+			} else {
+				leftIndex[v] = -1;
+			}
+		}
+
+		leftVertex = new int[left];
+		offsets = new int[left + 1];
+		targets = new int[(int) adjacency];
+		NeighbourIterator neighbours = graph.neighbourIterator();
+		for (int v = 0, l = 0, i = 0; v < n; v++)
+		{
+			if (leftIndex[v] < 0)
+				continue;
+			leftVertex[l] = v;
+			offsets[l] = i;
+			neighbours.reset(v);
+			for (int u; (u = neighbours.next()) >= 0; )
+				targets[i++] = u;
+			offsets[++l] = i;
+		}
+
+		mateLeft = new int[left];
+		mateRight = new int[n];
+		Arrays.fill(mateLeft, -1);
+		Arrays.fill(mateRight, -1);
+		dist = new int[left];
+		cursor = new int[left];
+		queue = new int[left];
+		stack = new int[left + 1];
+	}
+
+	/**
+	 * Adds a pair to the matching before maximumMatching() runs, to warm-start it from an earlier matching. Pairs that
+	 * aren't (or are no longer) usable are ignored.
+	 * @return True if a and b were both free and adjacent and are now matched to each other.
+	 */
+	public boolean match(int a, int b)
+	{
+		if (leftIndex[a] < 0)
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		int l = leftIndex[a];
+		if (l < 0 || leftIndex[b] >= 0 || mateLeft[l] >= 0 || mateRight[b] >= 0
+				|| Arrays.binarySearch(targets, offsets[l], offsets[l + 1], b) < 0)
+			return false;
+
+		mateLeft[l] = b;
+		mateRight[b] = l;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Grows the current matching to a maximum one: a greedy pass for free left vertices, then Hopcroft-Karp phases
+	 * until there is no augmenting path.
+	 * @return Size of the maximum matching.
+	 */
+	public int maximumMatching()
+	{
+		for (int l = 0; l < mateLeft.length; l++)
+		{
+			if (mateLeft[l] >= 0)
+				continue;
+			for (int i = offsets[l]; i < offsets[l + 1]; i++)
+				if (mateRight[targets[i]] < 0)
+				{
+					mateLeft[l] = targets[i];
+					mateRight[targets[i]] = l;
+					size++;
+					break;
+				}
+		}
+
+		int found;
+		while ((found = layer()) != INF)
+		{
+			phases++;
+			System.arraycopy(offsets, 0, cursor, 0, cursor.length);
+			for (int l = 0; l < mateLeft.length; l++)
+				if (mateLeft[l] < 0 && augment(l, found))
+					size++;
+		}
+		return size;
+	}
+
+	/**
+	 * BFS from all free left vertices over alternating paths, setting dist for every left vertex it reaches no later
+	 * than the first free right vertex.
+	 * @return Length (in left vertices) of the shortest augmenting path, INF if there is none.
+	 */
+	private int layer()
+	{
+		int head = 0, tail = 0, found = INF;
+		for (int l = 0; l < mateLeft.length; l++)
+		{
+			if (mateLeft[l] < 0)
+			{
+				dist[l] = 0;
+				queue[tail++] = l;
+			} else {
+				dist[l] = INF;
+			}
+		}
+
+		while (head < tail)
+		{
+			int l = queue[head++];
+			if (dist[l] >= found)
+				break;						// Queue is in dist order, so nothing later is on a shortest path.
+			for (int i = offsets[l]; i < offsets[l + 1]; i++)
+			{
+				int next = mateRight[targets[i]];
+				if (next < 0)
+					found = dist[l] + 1;
+				else if (dist[next] == INF)
+				{
+					dist[next] = dist[l] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Iterative DFS from free left vertex root along the BFS layers for a free right vertex at depth found, flipping
+	 * the path into the matching if it gets there. Edges tried are never tried again this phase (cursor), and dead
+	 * ends get dist INF, so a phase is O(E) overall.
+	 */
+	private boolean augment(int root, int found)
+	{
+		int depth = 0;
+		stack[0] = root;
+
+		while (depth >= 0)
+		{
+			int l = stack[depth];
+			boolean descended = false;
+
+			for (; cursor[l] < offsets[l + 1]; cursor[l]++)
+			{
+				int next = mateRight[targets[cursor[l]]];
+				if (next < 0)
+				{
+					if (dist[l] + 1 != found)
+						continue;
+					for (int d = depth; d >= 0; d--)		// Flip the path: each left vertex takes the right vertex
+					{										// its cursor points at.
+						int ld = stack[d], r = targets[cursor[ld]];
+						mateLeft[ld] = r;
+						mateRight[r] = ld;
+					}
+					return true;
+				}
+				if (dist[next] == dist[l] + 1)
+				{
+					stack[++depth] = next;
+					descended = true;
+					break;
+				}
+			}
+
+			if (!descended)
+			{
+				dist[l] = INF;
+				if (--depth >= 0)
+					cursor[stack[depth]]++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Size of the current matching.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Hopcroft-Karp phases run so far, not counting the greedy pass.
+	 */
+	public int phases()
+	{
+		return phases;
+	}
+
+	/**
+	 * @return Vertex matched to v, or -1 if v is free.
+	 */
+	public int mate(int v)
+	{
+		if (leftIndex[v] >= 0)
+			return mateLeft[leftIndex[v]];
+		return mateRight[v] < 0 ? -1 : leftVertex[mateRight[v]];
+	}
+
+	/**
+	 * @return mate(v) for every vertex.
+	 */
+	public int[] mates()
+	{
+		int[] mates = new int[leftIndex.length];
+		for (int v = 0; v < mates.length; v++)
+			mates[v] = mate(v);
+		return mates;
+	}
+}
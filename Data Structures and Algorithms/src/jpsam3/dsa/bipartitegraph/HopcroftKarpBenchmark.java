@@ -0,0 +1,111 @@
+package jpsam3.dsa.bipartitegraph;
+
+import java.util.Random;
+
+import jpsam3.dsa.adjlist.CompactGraph;
+
+/**
+ * Benchmarks HopcroftKarp on generated bipartite graphs: uniform random, and power-law, where a few vertices on each
+ * side take most of the edges (like popular jobs and prolific applicants). For each graph it times a cold run from the
+ * greedy matching, then adds 1% more edges and times a warm start from the previous matching against a cold run on the
+ * grown graph. Graphs come from a fixed seed so runs are comparable between changes.
+ *
+ * Usage: HopcroftKarpBenchmark [edge count, default 10000000]; each side gets edge count / 10 vertices. Needs a heap
+ * of about 2 GB at the default size.
+ */
+public class HopcroftKarpBenchmark
+{
+	private static final long SEED = 0x5EED;
+
+	/**
+	 * Picks a vertex on one side of a generated graph.
+	 */
+	private interface Endpoint
+	{
+		int next(Random rand, int side);
+	}
+
+	private static final Endpoint UNIFORM = new Endpoint() {
+		@Override
+		public int next(Random rand, int side)
+		{
+			return rand.nextInt(side);
+		}
+	};
+
+	private static final Endpoint POWER_LAW = new Endpoint() {
+		@Override
+		public int next(Random rand, int side)
+		{
+			double u = rand.nextDouble();
+			return (int) (side * (u * u * u));		// Density ~ x^(-2/3): low ids get most of the edges.
+		}
+	};
+
+	public static void main(String[] args)
+	{
+		int edges = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+		run("warm-up", 100000, UNIFORM, false);
+		System.out.printf("%-10s %-22s %10s %10s %8s%n", "graph", "stage", "time", "matching", "phases");
+		run("random", edges, UNIFORM, true);
+		run("power-law", edges, POWER_LAW, true);
+	}
+
+	private static void run(String name, int edges, Endpoint endpoint, boolean print)
+	{
+		int side = Math.max(1, edges / 10);
+		Random rand = new Random(SEED);
+
+		long start = System.nanoTime();
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		int[] left = new int[side], right = new int[side];
+		for (int v = 0; v < side; v++)
+		{
+			left[v] = builder.addVertex(String.format("L%08d", v));
+			right[v] = builder.addVertex(String.format("R%08d", v));
+		}
+		for (int e = 0; e < edges; e++)
+			builder.addEdge(left[endpoint.next(rand, side)], right[endpoint.next(rand, side)]);
+		CompactGraph graph = builder.build();
+		report(print, name, "build", System.nanoTime() - start, -1, -1);
+
+		start = System.nanoTime();
+		TwoColouring colouring = TwoColouring.compute(graph);
+		report(print, name, "two-colouring", System.nanoTime() - start, -1, -1);
+
+		start = System.nanoTime();
+		HopcroftKarp cold = new HopcroftKarp(graph, colouring);
+		cold.maximumMatching();
+		report(print, name, "cold", System.nanoTime() - start, cold.size(), cold.phases());
+		int[] mates = cold.mates();
+
+		for (int e = 0; e < edges / 100; e++)
+			builder.addEdge(left[endpoint.next(rand, side)], right[endpoint.next(rand, side)]);
+		graph = builder.build();							// Names are fixed-width, so ids don't change.
+		colouring = TwoColouring.compute(graph);
+
+		start = System.nanoTime();
+		HopcroftKarp warm = new HopcroftKarp(graph, colouring);
+		for (int v = 0; v < mates.length; v++)
+			if (mates[v] > v)
+				warm.match(v, mates[v]);
+		warm.maximumMatching();
+		report(print, name, "+1% edges, warm start", System.nanoTime() - start, warm.size(), warm.phases());
+
+		start = System.nanoTime();
+		cold = new HopcroftKarp(graph, colouring);
+		cold.maximumMatching();
+		report(print, name, "+1% edges, cold", System.nanoTime() - start, cold.size(), cold.phases());
+
+		if (warm.size() != cold.size())
+			System.out.printf("MISMATCH: warm start found %d, cold %d%n", warm.size(), cold.size());
+	}
+
+	private static void report(boolean print, String graph, String stage, long nanos, int size, int phases)
+	{
+		if (print)
+			System.out.printf("%-10s %-22s %7.1f ms %10s %8s%n", graph, stage, nanos / 1e6,
+					size < 0 ? "-" : Integer.toString(size), phases < 0 ? "-" : Integer.toString(phases));
+	}
+}
@@ -0,0 +1,323 @@
+package jpsam3.dsa.bipartitegraph;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jpsam3.dsa.adjlist.AdjacencyGraph;
+import jpsam3.dsa.adjlist.CompactGraph;
+import jpsam3.dsa.adjlist.ConnectedComponents;
+import jpsam3.dsa.adjlist.NeighbourIterator;
+
+/**
+ * Two-colouring of an AdjacencyGraph, or proof that there is none.
+ *
+ * Each component is coloured by an iterative BFS from its lowest vertex, which gets colour 0; every neighbour of a
+ * colour c vertex gets 1 - c. The graph is bipartite exactly when no edge joins two vertices of the same colour. When
+ * one does, both ends are at the same BFS depth, so following BFS parents up from each until they meet gives an odd
+ * cycle, which is returned as the witness. O(V + E), with an int array queue and a byte per vertex for the colours.
+ *
+ * computeParallel() finds the components first and colours them as separate fork-join tasks. That helps graphs made
+ * of many components (typical of assignment graphs); a single giant component is still coloured by one thread.
+ */
+public class TwoColouring
+{
+	private static final int VERTICES_PER_TASK = 1 << 14;
+
+	private static final byte NONE = -1;
+
+	private final byte[] colour;			// Vertex -> 0 or 1; only complete when bipartite.
+	private final int[]  oddCycle;			// Null when bipartite.
+
+	private TwoColouring(byte[] colour, int[] oddCycle)
+	{
+		this.colour = colour;
+		this.oddCycle = oddCycle;
+	}
+
+	/**
+	 * Colours components in order of their lowest vertex, stopping at the first odd cycle.
+	 */
+	public static TwoColouring compute(AdjacencyGraph graph)
+	{
+		int n = graph.vertexCount();
+		byte[] colour = new byte[n];
+		int[] parent = new int[n];
+		int[] queue = new int[n];
+		NeighbourIterator neighbours = graph.neighbourIterator();
+
+		Arrays.fill(colour, NONE);
+		for (int root = 0; root < n; root++)
+		{
+			if (colour[root] != NONE)
+				continue;
+			long conflict = colourComponent(neighbours, root, colour, parent, queue);
+			if (conflict >= 0)
+				return new TwoColouring(colour, oddCycle(parent, (int) (conflict >>> 32), (int) conflict));
+		}
+		return new TwoColouring(colour, null);
+	}
+
+	/**
+	 * Same result as compute(), with the components coloured in parallel on pool. If several components have odd cycles
+	 * the witness comes from the one with the lowest vertex, as with compute().
+	 */
+	public static TwoColouring computeParallel(AdjacencyGraph graph, ForkJoinPool pool)
+	{
+		int n = graph.vertexCount();
+		ConnectedComponents components = ConnectedComponents.computeParallel(graph, pool);
+		int count = components.count();
+
+		int[] roots = new int[count];				// Components are numbered by lowest vertex, so roots come in order.
+		for (int v = 0, c = 0; v < n && c < count; v++)
+			if (components.component(v) == c)
+				roots[c++] = v;
+		long[] firstVertex = new long[count + 1];	// Prefix sums of component sizes, for splitting tasks evenly.
+		for (int c = 0; c < count; c++)
+			firstVertex[c + 1] = firstVertex[c] + components.size(c);
+
+		byte[] colour = new byte[n];
+		int[] parent = new int[n];
+		Arrays.fill(colour, NONE);
+
+		ColourTask root = new ColourTask(graph, roots, firstVertex, colour, parent, new Conflict(), 0, count);
+		pool.invoke(root);
+
+		Conflict conflict = root.conflict;
+		return new TwoColouring(colour, conflict.component == Integer.MAX_VALUE ? null
+				: oddCycle(parent, conflict.a, conflict.b));
+	}
+
+	/**
+	 * BFS from root, colouring as it goes, until the component is done or an edge joins two same-coloured vertices.
+	 * @param queue Scratch, at least as long as the component.
+	 * @return -1 if the component is bipartite, else the offending edge's ends packed as (a << 32) | b.
+	 */
+	private static long colourComponent(NeighbourIterator neighbours, int root, byte[] colour, int[] parent, int[] queue)
+	{
+		int head = 0, tail = 0;
+		colour[root] = 0;
+		parent[root] = root;
+		queue[tail++] = root;
+
+		while (head < tail)
+		{
+			int v = queue[head++];
+			byte next = (byte) (1 - colour[v]);
+
+			neighbours.reset(v);
+			for (int u; (u = neighbours.next()) >= 0; )
+			{
+				if (colour[u] == NONE)
+				{
+					colour[u] = next;
+					parent[u] = v;
+					queue[tail++] = u;
+				} else if (colour[u] != next) {
+					return (long) v << 32 | u;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Walks up the BFS tree from both ends of a same-colour edge to where the paths meet. Both ends are at the same
+	 * depth, so they reach the meeting point together and the cycle has 2 * depth + 1 edges.
+	 * @return The cycle a, parent(a), ..., meeting point, ..., parent(b), b.
+	 */
+	private static int[] oddCycle(int[] parent, int a, int b)
+	{
+		int[] up = new int[16], down = new int[16];
+		int upLen = 0, downLen = 0;
+
+		while (a != b)
+		{
+			if (upLen == up.length)
+			{
+				up = Arrays.copyOf(up, upLen * 2);
+				down = Arrays.copyOf(down, upLen * 2);
+			}
+			up[upLen++] = a;
+			down[downLen++] = b;
+			a = parent[a];
+			b = parent[b];
+		}
+
+		int[] cycle = new int[upLen + 1 + downLen];
+		System.arraycopy(up, 0, cycle, 0, upLen);
+		cycle[upLen] = a;
+		for (int i = 0; i < downLen; i++)
+			cycle[upLen + 1 + i] = down[downLen - 1 - i];
+		return cycle;
+	}
+
+	public boolean isBipartite()
+	{
+		return oddCycle == null;
+	}
+
+	/**
+	 * @return 0 or 1; a component's lowest vertex is always 0.
+	 * @throws IllegalStateException If the graph isn't bipartite.
+	 */
+	public int colour(int v)
+	{
+		if (oddCycle != null)
+			throw new IllegalStateException("Graph is not bipartite");
+		return colour[v];
+	}
+
+	/**
+	 * @return Copy of the colour of every vertex.
+	 * @throws IllegalStateException If the graph isn't bipartite.
+	 */
+	public byte[] colours()
+	{
+		if (oddCycle != null)
+			throw new IllegalStateException("Graph is not bipartite");
+		return colour.clone();
+	}
+
+	/**
+	 * @return Vertex ids of an odd cycle, each adjacent to the next and the last to the first (a single vertex for a
+	 * self-loop), or null if the graph is bipartite.
+	 */
+	public int[] oddCycle()
+	{
+		return oddCycle == null ? null : oddCycle.clone();
+	}
+
+	/**
+	 * Lowest component with an odd cycle found so far, shared by all tasks so they can skip components after it.
+	 */
+	private static class Conflict
+	{
+		private volatile int component = Integer.MAX_VALUE;
+		private int a, b;
+
+		private synchronized void offer(int c, long edge)
+		{
+			if (c < component)
+			{
+				a = (int) (edge >>> 32);
+				b = (int) edge;
+				component = c;
+			}
+		}
+	}
+
+	/**
+	 * Colours components [lo, hi). Components never share vertices, so tasks write disjoint parts of colour and
+	 * parent without any synchronisation; the join publishes them.
+	 */
+	private static class ColourTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final AdjacencyGraph graph;
+		private final int[] roots;
+		private final long[] firstVertex;
+		private final byte[] colour;
+		private final int[] parent;
+		private final Conflict conflict;
+		private final int lo, hi;
+
+		private ColourTask(AdjacencyGraph graph, int[] roots, long[] firstVertex, byte[] colour, int[] parent,
+				Conflict conflict, int lo, int hi)
+		{
+			this.graph = graph;
+			this.roots = roots;
+			this.firstVertex = firstVertex;
+			this.colour = colour;
+			this.parent = parent;
+			this.conflict = conflict;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (hi - lo > 1 && firstVertex[hi] - firstVertex[lo] > VERTICES_PER_TASK)
+			{
+				// Split where half the vertices are on each side, so one big component doesn't drag its neighbours along.
+				long half = (firstVertex[lo] + firstVertex[hi]) >>> 1;
+				int mid = Arrays.binarySearch(firstVertex, lo + 1, hi, half);
+				mid = Math.min(hi - 1, Math.max(lo + 1, mid >= 0 ? mid : -mid - 1));
+				invokeAll(new ColourTask(graph, roots, firstVertex, colour, parent, conflict, lo, mid),
+						new ColourTask(graph, roots, firstVertex, colour, parent, conflict, mid, hi));
+				return;
+			}
+
+			int largest = 0;
+			for (int c = lo; c < hi; c++)
+				largest = (int) Math.max(largest, firstVertex[c + 1] - firstVertex[c]);
+			int[] queue = new int[largest];
+			NeighbourIterator neighbours = graph.neighbourIterator();
+
+			for (int c = lo; c < hi && c < conflict.component; c++)
+			{
+				long edge = colourComponent(neighbours, roots[c], colour, parent, queue);
+				if (edge >= 0)
+				{
+					conflict.offer(c, edge);
+					return;
+				}
+			}
+		}
+	}
+
+	/* Some tests: many small even cycles and paths, sequential against parallel, then with one odd cycle added. */
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random rand = new Random(21);
+
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (int v = 0; v < n; v++)
+			builder.addVertex(String.format("%08d", v));
+		for (int start = 0; start < n; )						// Random bipartite pieces of up to 2000 vertices.
+		{
+			int size = Math.min(n - start, 2 + 2 * rand.nextInt(1000));
+			for (int e = 0; e < 2 * size; e++)
+			{
+				int a = start + 2 * rand.nextInt(size / 2), b = start + 2 * rand.nextInt(size / 2) + 1;
+				builder.addEdge(a, Math.min(b, n - 1));
+			}
+			start += size;
+		}
+		CompactGraph graph = builder.build();
+
+		ForkJoinPool pool = new ForkJoinPool();
+		long start = System.nanoTime();
+		TwoColouring sequential = compute(graph);
+		long sequentialTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		TwoColouring parallel = computeParallel(graph, pool);
+		long parallelTime = System.nanoTime() - start;
+
+		System.out.printf("%d vertices, %d adjacency entries: bipartite %b, sequential %.1f ms, parallel %.1f ms on %d "
+				+ "threads, %s%n", n, graph.adjacencyCount(), sequential.isBipartite(), sequentialTime / 1e6,
+				parallelTime / 1e6, pool.getParallelism(), sequential.isBipartite() && parallel.isBipartite()
+						&& Arrays.equals(sequential.colour, parallel.colour) ? "matches" : "MISMATCH");
+
+		builder.addEdge(0, 1);									// Triangle 0 - 1 - 2.
+		builder.addEdge(1, 2);
+		builder.addEdge(2, 0);
+		graph = builder.build();
+		sequential = compute(graph);
+		parallel = computeParallel(graph, pool);
+		int[] cycle = sequential.oddCycle();
+		boolean valid = cycle.length % 2 == 1;
+		for (int i = 0; i < cycle.length; i++)
+			valid &= graph.hasEdge(cycle[i], cycle[(i + 1) % cycle.length]);
+
+		System.out.printf("With triangle 0 - 1 - 2: bipartite %b, odd cycle of %d vertices %s, parallel witness %s%n",
+				sequential.isBipartite(), cycle.length, valid ? "valid" : "INVALID",
+				Arrays.equals(cycle, parallel.oddCycle()) ? "matches" : "MISMATCH");
+		pool.shutdown();
+	}
+}
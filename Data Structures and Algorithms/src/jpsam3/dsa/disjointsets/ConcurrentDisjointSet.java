@@ -0,0 +1,265 @@
+package jpsam3.dsa.disjointsets;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find that can be unioned into from many threads at once. Uses the same encoding as DisjointSet:
+ * set[i] < 0 means i is a root of a tree of size -set[i], otherwise set[i] is the parent of i.
+ *
+ * Roots are only ever linked with a CAS on the child root's (negative) size, so a link only goes through if the child
+ * is still a root of exactly the size that was looked at. Sizes only ever grow while an element is a root, and ties are
+ * broken by index, which together stop two threads from linking a pair of roots under each other.
+ */
+public class ConcurrentDisjointSet
+{
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 14;	// Edges per fork-join leaf task.
+
+	private final AtomicIntegerArray set;
+
+	/**
+	 * Initialises all elements as singleton sets (-1).
+	 * @param size Number of elements in the universe.
+	 */
+	public ConcurrentDisjointSet(int size)
+	{
+		set = new AtomicIntegerArray(size);
+
+		for (int i = 0; i < size; i++)
+			set.set(i, -1);
+	}
+
+	/**
+	 * Finds the root of x using path splitting: every node on the way up is CAS'd to point at its grandparent. A failed
+	 * CAS just means another thread already shortened the path, so find never waits on anyone.
+	 * @param x Element to find the root for.
+	 * @return Root of the tree x is currently in.
+	 */
+	public int find(int x)
+	{
+		int parent;
+		while ((parent = set.get(x)) >= 0)
+		{
+			int grandparent = set.get(parent);
+			if (grandparent < 0)
+				return parent;
+
+			set.compareAndSet(x, parent, grandparent);
+			x = parent;
+		}
+		return x;
+	}
+
+	/**
+	 * Performs a union-by-size on the sets containing x and y.
+	 * @param x First element.
+	 * @param y Second element.
+	 * @return True if this call merged two different sets, false if they were already connected.
+	 */
+	public boolean union(int x, int y)
+	{
+		while (true)
+		{
+			int root1 = find(x);
+			int root2 = find(y);
+			if (root1 == root2)
+				return false;
+
+			int size1 = set.get(root1);
+			int size2 = set.get(root2);
+			if (size1 >= 0 || size2 >= 0)		// One of them stopped being a root since find(); start again.
+				continue;
+
+			int child, childSize, parent;
+			if (size1 > size2 || (size1 == size2 && root1 > root2))	// root1 is the smaller tree (or the tie loser).
+			{
+				child = root1;	childSize = size1;	parent = root2;
+			} else {
+				child = root2;	childSize = size2;	parent = root1;
+			}
+
+			if (set.compareAndSet(child, childSize, parent))
+			{
+				addSize(parent, childSize);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds the (negative) size of a freshly linked child onto whatever root its new parent now belongs to.
+	 * @param x Parent the child was linked under.
+	 * @param childSize Negative size of the linked child tree.
+	 */
+	private void addSize(int x, int childSize)
+	{
+		while (true)
+		{
+			int root = find(x);
+			int rootSize = set.get(root);
+			if (rootSize < 0 && set.compareAndSet(root, rootSize, rootSize + childSize))
+				return;
+		}
+	}
+
+	/**
+	 * @param x First element.
+	 * @param y Second element.
+	 * @return Boolean value denoting whether x and y are in the same set at the point of the call.
+	 */
+	public boolean connected(int x, int y)
+	{
+		while (true)
+		{
+			int root1 = find(x);
+			int root2 = find(y);
+			if (root1 == root2)
+				return true;
+			if (set.get(root1) < 0)			// root1 was still a root after root2 was found, so they really are apart.
+				return false;
+		}
+	}
+
+	/**
+	 * Size is exact once all unions have finished; during ingestion it may briefly lag behind a link.
+	 * @param x Element to look up.
+	 * @return Number of elements in the set containing x.
+	 */
+	public int componentSize(int x)
+	{
+		while (true)
+		{
+			int rootSize = set.get(find(x));
+			if (rootSize < 0)
+				return -rootSize;
+		}
+	}
+
+	/**
+	 * @return Number of elements in the universe.
+	 */
+	public int size() { return set.length(); }
+
+	/**
+	 * Unions every pair (a[i], b[i]) from the calling thread.
+	 * @param a First endpoints.
+	 * @param b Second endpoints.
+	 * @return Number of unions that actually merged two sets.
+	 */
+	public int unionAll(int[] a, int[] b)
+	{
+		checkLengths(a, b);
+		return unionRange(a, b, 0, a.length);
+	}
+
+	/**
+	 * Unions every pair (a[i], b[i]) by splitting the arrays across the given fork-join pool.
+	 * @param a First endpoints.
+	 * @param b Second endpoints.
+	 * @param pool Pool to run the unions on.
+	 */
+	public void unionAll(int[] a, int[] b, ForkJoinPool pool)
+	{
+		checkLengths(a, b);
+		pool.invoke(new UnionTask(a, b, 0, a.length));
+	}
+
+	private static void checkLengths(int[] a, int[] b)
+	{
+		if (a.length != b.length)
+			throw new IllegalArgumentException("unionAll() needs arrays of equal length");
+	}
+
+	private int unionRange(int[] a, int[] b, int from, int to)
+	{
+		int merged = 0;
+		for (int i = from; i < to; i++)
+			if (union(a[i], b[i]))
+				merged++;
+		return merged;
+	}
+
+	/**
+	 * Splits a slice of the edge arrays in half until it is small enough to union sequentially.
+	 */
+	private class UnionTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int[] a, b;
+		private final int from, to;
+
+		private UnionTask(int[] a, int[] b, int from, int to)
+		{
+			this.a    = a;
+			this.b    = b;
+			this.from = from;
+			this.to   = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= SEQUENTIAL_THRESHOLD)
+			{
+				unionRange(a, b, from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new UnionTask(a, b, from, mid), new UnionTask(a, b, mid, to));
+		}
+	}
+
+
+
+	/* Stress test: parallel ingestion must give exactly the same partition as DisjointSet. Optional arg: thread count. */
+	public static void main(String[] args)
+	{
+		int size  = 1 << 20;
+		int edges = size;
+		int runs  = 5;
+		Random rand = new Random(42);
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		for (int run = 0; run < runs; run++)
+		{
+			int[] a = new int[edges];
+			int[] b = new int[edges];
+			for (int i = 0; i < edges; i++)
+			{
+				a[i] = rand.nextInt(size);
+				b[i] = rand.nextInt(size);
+			}
+
+			DisjointSet expected = new DisjointSet(size);
+			long start = System.nanoTime();
+			expected.unionAll(a, b);
+			long sequentialNanos = System.nanoTime() - start;
+
+			ConcurrentDisjointSet actual = new ConcurrentDisjointSet(size);
+			start = System.nanoTime();
+			actual.unionAll(a, b, pool);
+			long parallelNanos = System.nanoTime() - start;
+
+			// Same partition iff every element agrees with its expected root on connectivity and sizes match.
+			for (int i = 0; i < size; i++)
+			{
+				int expectedRoot = expected.find(i);
+				if (!actual.connected(i, expectedRoot) || actual.componentSize(i) != expected.componentSize(i))
+					throw new IllegalStateException("Partitions differ at element " + i);
+			}
+			for (int i = 0; i < edges; i++)
+				if (!actual.connected(a[i], b[i]))
+					throw new IllegalStateException("Edge " + i + " was lost");
+
+			System.out.printf("Run %d: %d sets, sequential %.1f ms, parallel %.1f ms (%d threads)%n", run,
+					expected.setCount(), sequentialNanos / 1e6, parallelNanos / 1e6, pool.getParallelism());
+		}
+		pool.shutdown();
+		System.out.printf("Partitions match.%n");
+	}
+}
@@ -1,68 +1,252 @@
 package jpsam3.dsa.disjointsets;
 
+import java.util.Arrays;
+
 public class DisjointSet
 {
-	private static int[] set;
+	private int[] set;				// set[i] < 0 means i is a root of a tree of size -set[i], else set[i] is i's parent
+	private int size;				// elements in use; set may have spare capacity past this for add()
+	private int setCount;
+
+	private final boolean undoable;	// undoable sets never compress paths and log every link so it can be rolled back
+	private int[] history;			// pairs of (linked child root, child's size before the link)
+	private int historyLen;
 
 	/*
 	 * basic constructor to initialise all elements in set to -1
 	 */
 	public DisjointSet(int size)
+	{
+		this(size, false);
+	}
+
+	/*
+	 * undoable == true gives a union-by-size-only set (no path compression, so O(log n) per find) that supports
+	 * snapshot() and rollback()
+	 */
+	public DisjointSet(int size, boolean undoable)
 	{
 		set = new int[size];
+		this.size = size;
+		setCount = size;
+		this.undoable = undoable;
+		history = undoable ? new int[16] : null;
 
 		for (int i = 0; i < set.length; i++)
 			set[i] = -1;
 	}
 
 	/*
-	 * performs a union-by-size on subsets root1 and root2
+	 * adds a new element to the universe as a singleton subset and returns it; amortised O(1)
+	 */
+	public int add()
+	{
+		if (size == set.length)
+			set = Arrays.copyOf(set, Math.max(16, set.length * 2));
+
+		set[size] = -1;
+		setCount++;
+		return size++;
+	}
+
+	/*
+	 * finds the root of the tree containing x, halving the path on the way up (every node visited is pointed at its grandparent)
+	 * throws IndexOutOfBoundsException if x isn't an element, and so do union(), connected() and componentSize()
+	 */
+	public int find(int x)
+	{
+		int parent;
+
+		if (x < 0 || x >= size)					// set can have spare capacity past size
+			throw new IndexOutOfBoundsException("element " + x + " outside universe of size " + size);
+
+		if (undoable) {							// compressing would change links the history doesn't know about
+			while (set[x] >= 0)
+				x = set[x];
+			return x;
+		}
+
+		while ((parent = set[x]) >= 0) {
+			if (set[parent] >= 0)				// parent isn't a root so skip x past it
+				set[x] = set[parent];
+
+			x = parent;
+		}
+
+		return x;
+	}
+
+	/*
+	 * performs a union-by-size on the subsets containing x and y
+	 * returns true if two different subsets were merged, false if x and y were already connected
 	 */
-	public static void union(int root1, int root2)
+	public boolean union(int x, int y)
 	{
+		int root1, root2;
+
+		root1 = find(x);
+		root2 = find(y);
+
+		if (root1 == root2)
+			return false;
+
+		if (undoable)
+			logLink(set[root1] <= set[root2] ? root2 : root1);
+
 		if (set[root1] <= set[root2]) {			// if root1 is the larger size tree or both trees are equal
+			set[root1] += set[root2];			// updates root1's size
 			set[root2] = root1;
-
-			if (set[root2] < 0)					// updates root1's size
-				set[root1] += set[root2];
-			else
-				set[root1]--;
 		} else {								// if root2 is the larger size tree
+			set[root2] += set[root1];			// updates root2's size
 			set[root1] = root2;
+		}
+
+		setCount--;
+		return true;
+	}
+
+	/*
+	 * records the state of child root before it gets linked under another root
+	 */
+	private void logLink(int child)
+	{
+		if (historyLen + 2 > history.length)
+			history = Arrays.copyOf(history, history.length * 2);
+
+		history[historyLen++] = child;
+		history[historyLen++] = set[child];
+	}
+
+	/*
+	 * returns a token for the current state that rollback() can later return to (undoable sets only)
+	 */
+	public int snapshot()
+	{
+		checkUndoable();
+		return historyLen;
+	}
+
+	/*
+	 * undoes every union made since snapshot() returned token, most recent first; O(1) per undone union
+	 */
+	public void rollback(int token)
+	{
+		int child, childSize;
 
-			if (set[root1] < 0)					// updates root2's size
-				set[root2] -= set[root1];
-			else
-				set[root2]--;
+		checkUndoable();
+		if (token < 0 || token > historyLen || (token & 1) != 0)
+			throw new IllegalArgumentException("not a snapshot token of this set: " + token);
+
+		while (historyLen > token) {
+			childSize = history[--historyLen];
+			child = history[--historyLen];
+
+			set[set[child]] -= childSize;		// take the child's size back off its parent
+			set[child] = childSize;
+			setCount++;
 		}
+	}
+
+	private void checkUndoable()
+	{
+		if (!undoable)
+			throw new IllegalStateException("set was not created as undoable");
+	}
+
+	/*
+	 * performs union(a[i], b[i]) for every pair of elements in the given arrays
+	 * returns the number of unions that actually merged two subsets
+	 */
+	public int unionAll(int[] a, int[] b)
+	{
+		int merged = 0;
+
+		if (a.length != b.length)
+			throw new IllegalArgumentException("unionAll() needs arrays of equal length");
+
+		for (int i = 0; i < a.length; i++)
+			if (union(a[i], b[i]))
+				merged++;
+
+		return merged;
+	}
+
+	/*
+	 * x and y in the same subset ? true : false
+	 */
+	public boolean connected(int x, int y)
+	{
+		return find(x) == find(y);
+	}
 
-		printSets();
+	/*
+	 * returns the number of elements in the subset containing x
+	 */
+	public int componentSize(int x)
+	{
+		return -set[find(x)];
+	}
+
+	/*
+	 * returns the number of disjoint subsets currently held
+	 */
+	public int setCount()
+	{
+		return setCount;
+	}
+
+	/*
+	 * returns the number of elements in the universe
+	 */
+	public int size()
+	{
+		return size;
 	}
 
 	/*
 	 * prints out the array for the disjoint sets showing connectivities
 	 */
-	public static void printSets()
+	public void printSets()
 	{
 		System.out.printf("value:  ");
-		for (int i : set)
-			System.out.printf("%d  ", i);
+		for (int i = 0; i < size; i++)
+			System.out.printf("%d  ", set[i]);
 
 		System.out.printf("\n\n");
 	}
 
 	public static void main(String[] args)
 	{
-//		int size = 10;
-//		jpsam3.dsa.disjointsets.DisjointSet ds = new jpsam3.dsa.disjointsets.DisjointSet(size);
-		union(0,1);
-		union(0,2);
-		union(0,3);
+		int size = 10;
+		DisjointSet ds = new DisjointSet(size);
+
+		ds.union(0,1);
+		ds.union(0,2);
+		ds.union(0,3);
+
+		ds.union(5,6);
+		ds.union(5,7);
+		ds.union(5,8);
+
+		ds.union(0,5);
+		ds.printSets();
+
+		System.out.printf("connected(3, 8): %b\n", ds.connected(3, 8));
+		System.out.printf("connected(3, 9): %b\n", ds.connected(3, 9));
+		System.out.printf("componentSize(2): %d\n", ds.componentSize(2));
+		System.out.printf("no. of sets: %d\n", ds.setCount());
 
-		union(5,6);
-		union(5,7);
-		union(5,8);
+		int added = ds.add();
+		ds.union(added, 9);
+		System.out.printf("added %d, componentSize(9): %d, no. of sets: %d\n", added, ds.componentSize(9), ds.setCount());
 
-		union(0,5);
+		DisjointSet undo = new DisjointSet(size, true);
+		undo.union(0, 1);
+		int token = undo.snapshot();
+		undo.union(1, 2);
+		undo.union(3, 2);
+		System.out.printf("\nbefore rollback connected(0, 3): %b\n", undo.connected(0, 3));
+		undo.rollback(token);
+		System.out.printf("after rollback connected(0, 3): %b, connected(0, 1): %b\n", undo.connected(0, 3), undo.connected(0, 1));
 	}
 }
@@ -0,0 +1,267 @@
+package jpsam3.dsa.disjointsets;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Offline dynamic connectivity: records a sequence of edge insertions, deletions and connectivity queries, then answers
+ * every query in a single pass with solve().
+ *
+ * Each edge is alive for a range of queries, and that range is added to O(log q) nodes of a segment tree over the
+ * queries. A DFS over the tree unions a node's edges on the way down into an undoable DisjointSet and rolls them back on
+ * the way up, so every leaf sees exactly the edges alive at its query. That gives O((n + q) log n log q) overall.
+ */
+public class DynamicConnectivity
+{
+	private final int vertexCount;
+
+	// Operation log; recorded intervals use query indices as time, so the tree only has as many leaves as queries.
+	private final HashMap<Long,ArrayDeque<Integer>> aliveSince;	// Edge key -> query index each live copy was added at.
+	private int[] intervalFrom, intervalTo, intervalU, intervalV;
+	private int   intervalCount;
+	private int[] queryU, queryV;
+	private int   queryCount;
+
+	/**
+	 * @param vertexCount Number of vertices; vertices are 0 .. vertexCount-1.
+	 */
+	public DynamicConnectivity(int vertexCount)
+	{
+		this.vertexCount = vertexCount;
+		aliveSince    = new HashMap<>();
+		intervalFrom  = new int[16];
+		intervalTo    = new int[16];
+		intervalU     = new int[16];
+		intervalV     = new int[16];
+		queryU        = new int[16];
+		queryV        = new int[16];
+	}
+
+	private static long edgeKey(int u, int v)
+	{
+		return u < v ? ((long) u << 32) | v : ((long) v << 32) | u;
+	}
+
+	private void checkVertex(int v)
+	{
+		if (v < 0 || v >= vertexCount)
+			throw new IndexOutOfBoundsException("Vertex " + v + " not in [0, " + vertexCount + ")");
+	}
+
+	/**
+	 * Inserts an edge; parallel edges are allowed and each needs its own removeEdge().
+	 * @param u First endpoint.
+	 * @param v Second endpoint.
+	 */
+	public void addEdge(int u, int v)
+	{
+		checkVertex(u);
+		checkVertex(v);
+
+		Long key = edgeKey(u, v);
+		ArrayDeque<Integer> starts = aliveSince.get(key);
+		if (starts == null)
+		{
+			starts = new ArrayDeque<>();
+			aliveSince.put(key, starts);
+		}
+		starts.push(queryCount);
+	}
+
+	/**
+	 * Deletes one copy of a previously inserted edge.
+	 * @param u First endpoint.
+	 * @param v Second endpoint.
+	 */
+	public void removeEdge(int u, int v)
+	{
+		checkVertex(u);
+		checkVertex(v);
+
+		Long key = edgeKey(u, v);
+		ArrayDeque<Integer> starts = aliveSince.get(key);
+		if (starts == null)
+			throw new IllegalArgumentException("Edge " + u + " - " + v + " is not present");
+
+		addInterval(starts.pop(), queryCount, u, v);
+		if (starts.isEmpty())
+			aliveSince.remove(key);
+	}
+
+	/**
+	 * Records a query against the edges alive at this point of the sequence.
+	 * @param u First vertex.
+	 * @param v Second vertex.
+	 * @return Index of this query in the array returned by solve().
+	 */
+	public int query(int u, int v)
+	{
+		checkVertex(u);
+		checkVertex(v);
+
+		if (queryCount == queryU.length)
+		{
+			queryU = Arrays.copyOf(queryU, queryCount * 2);
+			queryV = Arrays.copyOf(queryV, queryCount * 2);
+		}
+		queryU[queryCount] = u;
+		queryV[queryCount] = v;
+		return queryCount++;
+	}
+
+	private void addInterval(int from, int to, int u, int v)
+	{
+		if (from >= to)			// Added and removed with no query in between; can't affect any answer.
+			return;
+
+		if (intervalCount == intervalFrom.length)
+		{
+			int newLen = intervalCount * 2;
+			intervalFrom = Arrays.copyOf(intervalFrom, newLen);
+			intervalTo   = Arrays.copyOf(intervalTo, newLen);
+			intervalU    = Arrays.copyOf(intervalU, newLen);
+			intervalV    = Arrays.copyOf(intervalV, newLen);
+		}
+		intervalFrom[intervalCount] = from;
+		intervalTo[intervalCount]   = to;
+		intervalU[intervalCount]    = u;
+		intervalV[intervalCount]    = v;
+		intervalCount++;
+	}
+
+	/**
+	 * Answers every query recorded so far. Edges still alive are treated as alive until the last query.
+	 * @return answers[i] is the result of the i-th query().
+	 */
+	public boolean[] solve()
+	{
+		boolean[] answers = new boolean[queryCount];
+		if (queryCount == 0)
+			return answers;
+
+		int savedCount = intervalCount;
+		for (Map.Entry<Long,ArrayDeque<Integer>> entry : aliveSince.entrySet())
+		{
+			long key = entry.getKey();
+			for (int start : entry.getValue())
+				addInterval(start, queryCount, (int) (key >>> 32), (int) key);
+		}
+
+		SegmentTree tree = new SegmentTree(queryCount);
+		for (int i = 0; i < intervalCount; i++)
+			tree.insert(1, 0, queryCount, intervalFrom[i], intervalTo[i], i);
+
+		tree.solve(1, 0, queryCount, new DisjointSet(vertexCount, true), answers);
+
+		intervalCount = savedCount;		// So more operations can still be recorded and solve() called again.
+		return answers;
+	}
+
+	/**
+	 * Segment tree over query indices. Each node keeps a singly linked list (in primitive arrays) of the intervals that
+	 * fully cover its range.
+	 */
+	private class SegmentTree
+	{
+		private final int[] head;		// First list entry per node, -1 if none.
+		private int[]       next;		// Next entry in the same node's list.
+		private int[]       interval;	// Interval index stored in each entry.
+		private int         entries;
+
+		private SegmentTree(int leaves)
+		{
+			head     = new int[4 * leaves];
+			next     = new int[Math.max(16, intervalCount * 2)];
+			interval = new int[next.length];
+			Arrays.fill(head, -1);
+		}
+
+		private void insert(int node, int lo, int hi, int from, int to, int i)
+		{
+			if (to <= lo || hi <= from)
+				return;
+
+			if (from <= lo && hi <= to)
+			{
+				if (entries == next.length)
+				{
+					next     = Arrays.copyOf(next, entries * 2);
+					interval = Arrays.copyOf(interval, entries * 2);
+				}
+				interval[entries] = i;
+				next[entries]     = head[node];
+				head[node]        = entries++;
+				return;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			insert(2 * node, lo, mid, from, to, i);
+			insert(2 * node + 1, mid, hi, from, to, i);
+		}
+
+		private void solve(int node, int lo, int hi, DisjointSet ds, boolean[] answers)
+		{
+			int token = ds.snapshot();
+			for (int e = head[node]; e != -1; e = next[e])
+				ds.union(intervalU[interval[e]], intervalV[interval[e]]);
+
+			if (hi - lo == 1)
+			{
+				answers[lo] = ds.connected(queryU[lo], queryV[lo]);
+			} else {
+				int mid = (lo + hi) >>> 1;
+				solve(2 * node, lo, mid, ds, answers);
+				solve(2 * node + 1, mid, hi, ds, answers);
+			}
+
+			ds.rollback(token);
+		}
+	}
+
+
+
+	/* Some tests: checks solve() against recomputing connectivity from scratch at every query. */
+	public static void main(String[] args)
+	{
+		int n = 200;
+		int ops = 20000;
+		Random rand = new Random(7);
+
+		DynamicConnectivity dc = new DynamicConnectivity(n);
+		ArrayList<long[]> live = new ArrayList<>();
+		ArrayList<Boolean> expected = new ArrayList<>();
+
+		for (int i = 0; i < ops; i++)
+		{
+			int op = rand.nextInt(3);
+			if (op == 0 || live.isEmpty())
+			{
+				int u = rand.nextInt(n), v = rand.nextInt(n);
+				dc.addEdge(u, v);
+				live.add(new long[] {u, v});
+			} else if (op == 1) {
+				long[] edge = live.remove(rand.nextInt(live.size()));
+				dc.removeEdge((int) edge[0], (int) edge[1]);
+			} else {
+				int u = rand.nextInt(n), v = rand.nextInt(n);
+				dc.query(u, v);
+
+				DisjointSet brute = new DisjointSet(n);
+				for (long[] edge : live)
+					brute.union((int) edge[0], (int) edge[1]);
+				expected.add(brute.connected(u, v));
+			}
+		}
+
+		boolean[] answers = dc.solve();
+		for (int i = 0; i < answers.length; i++)
+			if (answers[i] != expected.get(i))
+				throw new IllegalStateException("Query " + i + " answered wrongly");
+
+		System.out.printf("All %d queries match.%n", answers.length);
+	}
+}
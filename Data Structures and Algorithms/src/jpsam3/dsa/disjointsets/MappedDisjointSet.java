@@ -0,0 +1,248 @@
+package jpsam3.dsa.disjointsets;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Long-indexed union-find whose parent array lives in a memory-mapped file instead of on the heap, so the universe can
+ * be bigger than 2^31 elements and bigger than the heap itself. The state is the file, so checkpoint() and reopening
+ * the same path picks up exactly where it left off without rebuilding anything.
+ *
+ * Same union-by-size semantics as DisjointSet (a negative value is the size of a root, otherwise it's the parent), but
+ * each slot holds the bitwise complement of that value. A singleton root (-1) is therefore stored as 0, which means a
+ * freshly created sparse file is already a valid set of singletons and never has to be filled in.
+ *
+ * File layout: [magic:8][size:8][setCount:8][unused:40] followed by one long per element.
+ */
+public class MappedDisjointSet implements Closeable
+{
+	private static final long MAGIC         = 0x6A7073616D334453L;	// "jpsam3DS"
+	private static final int  HEADER_BYTES  = 64;
+	private static final int  SEGMENT_SHIFT = 30;					// 1 GB mappings; MappedByteBuffer is int-indexed.
+	private static final long SEGMENT_MASK  = (1L << SEGMENT_SHIFT) - 1;
+
+	private final RandomAccessFile   file;
+	private final MappedByteBuffer[] segments;
+	private final long               size;
+	private long                     setCount;
+
+	private MappedDisjointSet(RandomAccessFile file, long size, long setCount) throws IOException
+	{
+		this.file     = file;
+		this.size     = size;
+		this.setCount = setCount;
+
+		long totalBytes = HEADER_BYTES + size * 8;
+		int segmentCount = (int) ((totalBytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		segments = new MappedByteBuffer[segmentCount];
+
+		FileChannel channel = file.getChannel();
+		for (int i = 0; i < segmentCount; i++)
+		{
+			long start = (long) i << SEGMENT_SHIFT;
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(1L << SEGMENT_SHIFT, totalBytes - start));
+		}
+	}
+
+	/**
+	 * Creates a new set of singletons backed by the given file, replacing anything already there.
+	 * @param path File to back the set with.
+	 * @param size Number of elements in the universe.
+	 * @return Freshly created set.
+	 * @throws IOException If the file can't be created or mapped.
+	 */
+	public static MappedDisjointSet create(String path, long size) throws IOException
+	{
+		if (size < 0)
+			throw new IllegalArgumentException("size must not be negative");
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			file.setLength(HEADER_BYTES + size * 8);	// Zero-filled, i.e. all singletons.
+
+			MappedDisjointSet ds = new MappedDisjointSet(file, size, size);
+			ds.segments[0].putLong(0, MAGIC);
+			ds.segments[0].putLong(8, size);
+			ds.writeHeader();
+			return ds;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reopens a set previously written by create() and checkpoint()/close().
+	 * @param path File the set was created with.
+	 * @return Set in the state of its last checkpoint.
+	 * @throws IOException If the file can't be mapped or isn't a MappedDisjointSet file.
+	 */
+	public static MappedDisjointSet open(String path) throws IOException
+	{
+		if (!new File(path).isFile())
+			throw new IOException("No such disjoint set file: " + path);
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			if (file.length() < HEADER_BYTES)
+				throw new IOException("Truncated disjoint set file: " + path);
+
+			file.seek(0);
+			long magic    = file.readLong();
+			long size     = file.readLong();
+			long setCount = file.readLong();
+			if (magic != MAGIC || size < 0 || file.length() < HEADER_BYTES + size * 8)
+				throw new IOException("Not a disjoint set file: " + path);
+
+			return new MappedDisjointSet(file, size, setCount);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private long get(long i)
+	{
+		long pos = HEADER_BYTES + (i << 3);
+		return ~segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+	}
+
+	private void put(long i, long value)
+	{
+		long pos = HEADER_BYTES + (i << 3);
+		segments[(int) (pos >>> SEGMENT_SHIFT)].putLong((int) (pos & SEGMENT_MASK), ~value);
+	}
+
+	private void checkIndex(long x)
+	{
+		if (x < 0 || x >= size)
+			throw new IndexOutOfBoundsException("Element " + x + " not in [0, " + size + ")");
+	}
+
+	/**
+	 * Finds the root of x, halving the path on the way up.
+	 * @param x Element to find the root for.
+	 * @return Root of the set containing x.
+	 */
+	public long find(long x)
+	{
+		checkIndex(x);
+
+		long parent;
+		while ((parent = get(x)) >= 0)
+		{
+			long grandparent = get(parent);
+			if (grandparent >= 0)					// Parent isn't a root so skip x past it.
+				put(x, grandparent);
+			x = parent;
+		}
+		return x;
+	}
+
+	/**
+	 * Performs a union-by-size on the sets containing x and y.
+	 * @param x First element.
+	 * @param y Second element.
+	 * @return True if two different sets were merged, false if x and y were already connected.
+	 */
+	public boolean union(long x, long y)
+	{
+		long root1 = find(x);
+		long root2 = find(y);
+		if (root1 == root2)
+			return false;
+
+		long size1 = get(root1);
+		long size2 = get(root2);
+		if (size1 <= size2)							// root1 is the larger tree or both are equal.
+		{
+			put(root1, size1 + size2);
+			put(root2, root1);
+		} else {
+			put(root2, size1 + size2);
+			put(root1, root2);
+		}
+
+		setCount--;
+		return true;
+	}
+
+	/**
+	 * @param x First element.
+	 * @param y Second element.
+	 * @return Boolean value denoting whether x and y are in the same set.
+	 */
+	public boolean connected(long x, long y) { return find(x) == find(y); }
+
+	/**
+	 * @param x Element to look up.
+	 * @return Number of elements in the set containing x.
+	 */
+	public long componentSize(long x) { return -get(find(x)); }
+
+	/**
+	 * @return Number of disjoint sets currently held.
+	 */
+	public long setCount() { return setCount; }
+
+	/**
+	 * @return Number of elements in the universe.
+	 */
+	public long size() { return size; }
+
+	private void writeHeader()
+	{
+		segments[0].putLong(16, setCount);
+	}
+
+	/**
+	 * Flushes every dirty page to disk so the current state survives a crash or restart.
+	 */
+	public void checkpoint()
+	{
+		writeHeader();
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+	}
+
+	/**
+	 * Checkpoints and releases the file. The mappings themselves are released once they are garbage collected.
+	 * @throws IOException If the file can't be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		checkpoint();
+		file.close();
+	}
+
+
+
+	/* Some tests */
+	public static void main(String[] args) throws IOException
+	{
+		File tmp = File.createTempFile("disjointset", ".bin");
+		long size = 3_000_000_000L;					// More elements than an int[] can index.
+
+		MappedDisjointSet ds = create(tmp.getPath(), size);
+		ds.union(0, 1);
+		ds.union(1, size -1);
+		ds.union(size -2, size -3);
+		ds.close();
+
+		ds = open(tmp.getPath());
+		System.out.printf("connected(0, %d): %b%n", size -1, ds.connected(0, size -1));
+		System.out.printf("connected(0, %d): %b%n", size -2, ds.connected(0, size -2));
+		System.out.printf("componentSize(1): %d%n", ds.componentSize(1));
+		System.out.printf("no. of sets: %d%n", ds.setCount());
+		ds.close();
+
+		if (!tmp.delete())
+			tmp.deleteOnExit();
+	}
+}
@@ -0,0 +1,178 @@
+package jpsam3.dsa.disjointsets;
+
+import java.util.Arrays;
+
+/*
+ * union-find where every element also carries a parity bit relative to its parent, so each set knows which of two
+ * sides each of its elements is on. union(x, y, 1) says x and y are on opposite sides, union(x, y, 0) on the same side;
+ * a union that contradicts what the set already knows is refused. feeding it the edges of a graph as union(a, b, 1)
+ * tracks whether the graph is still bipartite, and parity() gives a two-colouring at any time, with no traversal
+ */
+public class ParityDisjointSet
+{
+	private int[] set;				// same encoding as DisjointSet: set[i] < 0 means root of size -set[i], else parent
+	private byte[] parity;			// parity[i] = side of i relative to set[i]; 0 for roots
+	private int size;
+	private int setCount;
+
+	/*
+	 * basic constructor: every element a singleton on side 0 of its own set
+	 */
+	public ParityDisjointSet(int size)
+	{
+		set = new int[size];
+		parity = new byte[size];
+		this.size = size;
+		setCount = size;
+
+		for (int i = 0; i < set.length; i++)
+			set[i] = -1;
+	}
+
+	/*
+	 * adds a new element to the universe as a singleton subset and returns it; amortised O(1)
+	 */
+	public int add()
+	{
+		if (size == set.length) {
+			set = Arrays.copyOf(set, Math.max(16, set.length * 2));
+			parity = Arrays.copyOf(parity, set.length);
+		}
+
+		set[size] = -1;
+		parity[size] = 0;
+		setCount++;
+		return size++;
+	}
+
+	/*
+	 * finds the root of the tree containing x, pointing every node on the way straight at the root with its parity
+	 * to the root (two passes, since a node's new parity depends on everything above it)
+	 * throws IndexOutOfBoundsException if x isn't an element, and so does everything else that takes one
+	 */
+	public int find(int x)
+	{
+		int root = x, p = 0, next, old;
+
+		if (x < 0 || x >= size)					// set can have spare capacity past size
+			throw new IndexOutOfBoundsException("element " + x + " outside universe of size " + size);
+
+		while (set[root] >= 0) {				// first pass: find the root and x's parity to it
+			p ^= parity[root];
+			root = set[root];
+		}
+
+		while (x != root) {						// second pass: hang each node off the root directly
+			next = set[x];
+			old = parity[x];
+			set[x] = root;
+			parity[x] = (byte) p;
+			p ^= old;							// parity of next to the root
+			x = next;
+		}
+
+		return root;
+	}
+
+	/*
+	 * returns the side (0 or 1) of x relative to the root of its set
+	 */
+	public int parity(int x)
+	{
+		find(x);								// after find x is the root or points straight at it
+		return parity[x];
+	}
+
+	/*
+	 * records that x and y are on the same side (rel == 0) or opposite sides (rel == 1), merging their sets by size
+	 * returns false, changing nothing, if they're already in one set on the wrong sides; true otherwise
+	 */
+	public boolean union(int x, int y, int rel)
+	{
+		int root1, root2, p;
+
+		root1 = find(x);
+		root2 = find(y);
+		p = parity[x] ^ parity[y] ^ rel;		// after find x and y point straight at their roots (or are them, parity 0)
+
+		if (root1 == root2)
+			return p == 0;
+
+		if (set[root1] <= set[root2]) {			// if root1 is the larger size tree or both trees are equal
+			set[root1] += set[root2];
+			set[root2] = root1;
+			parity[root2] = (byte) p;
+		} else {								// if root2 is the larger size tree
+			set[root2] += set[root1];
+			set[root1] = root2;
+			parity[root1] = (byte) p;
+		}
+
+		setCount--;
+		return true;
+	}
+
+	/*
+	 * x and y in the same subset ? true : false
+	 */
+	public boolean connected(int x, int y)
+	{
+		return find(x) == find(y);
+	}
+
+	/*
+	 * true if x and y are in the same subset and on the same side of it
+	 */
+	public boolean sameSide(int x, int y)
+	{
+		return connected(x, y) && parity(x) == parity(y);
+	}
+
+	/*
+	 * returns the number of elements in the subset containing x
+	 */
+	public int componentSize(int x)
+	{
+		return -set[find(x)];
+	}
+
+	/*
+	 * returns the number of disjoint subsets currently held
+	 */
+	public int setCount()
+	{
+		return setCount;
+	}
+
+	/*
+	 * returns the number of elements in the universe
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public static void main(String[] args)
+	{
+		ParityDisjointSet ps = new ParityDisjointSet(6);
+
+		System.out.printf("union(0, 1, 1): %b\n", ps.union(0, 1, 1));	// path 0 - 1 - 2 - 3
+		System.out.printf("union(1, 2, 1): %b\n", ps.union(1, 2, 1));
+		System.out.printf("union(2, 3, 1): %b\n", ps.union(2, 3, 1));
+		System.out.printf("union(3, 0, 1): %b (even cycle)\n", ps.union(3, 0, 1));
+		System.out.printf("union(0, 2, 1): %b (odd cycle)\n", ps.union(0, 2, 1));
+
+		System.out.printf("sides: ");
+		for (int i = 0; i < 4; i++)
+			System.out.printf("%d ", ps.parity(i));
+		System.out.printf("\nsameSide(0, 2): %b, sameSide(0, 3): %b, sameSide(0, 4): %b\n", ps.sameSide(0, 2),
+				ps.sameSide(0, 3), ps.sameSide(0, 4));
+
+		int added = ps.add();
+		ps.union(4, 5, 1);
+		ps.union(added, 4, 1);
+		ps.union(3, 5, 1);
+		System.out.printf("added %d, sameSide(0, 4): %b, sameSide(%d, 0): %b, no. of sets: %d\n", added,
+				ps.sameSide(0, 4), added, ps.sameSide(added, 0), ps.setCount());
+	}
+}
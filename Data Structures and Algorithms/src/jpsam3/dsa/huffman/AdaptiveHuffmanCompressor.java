@@ -0,0 +1,158 @@
+package jpsam3.dsa.huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * One-pass (adaptive) Huffman coding for streams that can't be rewound, such as sockets and pipes.
+ *
+ * Encoder and decoder start from the same flat model and keep it in lockstep: each chunk is coded with the current
+ * model, after which both sides halve the old counts, add the chunk's counts and rebuild the code. No code tables are
+ * ever sent, every symbol always has a code, and old data fades out so the model follows the stream as it changes.
+ *
+ * Each chunk is whatever a single read() returned (up to CHUNK_SIZE bytes) and is flushed as soon as it's coded, so
+ * latency is bounded by one chunk. Format: magic, then per chunk [byte count:32][codes][pad to byte][0:32], then a 0
+ * count. The 32 zero bits after each chunk cover the decoder's table lookahead, so decoding the last symbol of a chunk
+ * never waits on the next chunk to arrive.
+ */
+public class AdaptiveHuffmanCompressor
+{
+	private static final int MAGIC         = 0x48554641;	// "HUFA"
+	private static final int CHUNK_SIZE    = 1 << 16;
+	private static final int ALPHABET_SIZE = HuffmanCodeCompressor.ALPHABET_SIZE;
+
+	/**
+	 * Counts shared by both ends of the stream, with the code rebuilt from them after every chunk.
+	 */
+	private static class Model
+	{
+		private final long[] counts = new long[ALPHABET_SIZE];
+		private final long[] chunkCounts = new long[ALPHABET_SIZE];
+		private final HuffmanLengthBuilder builder = new HuffmanLengthBuilder(ALPHABET_SIZE);
+		private final CanonicalCode code = new CanonicalCode(new int[ALPHABET_SIZE]);
+
+		private Model()
+		{
+			Arrays.fill(counts, 1);
+			rebuild();
+		}
+
+		private void rebuild()
+		{
+			builder.build(counts, code.lengths, HuffmanCodeCompressor.MAX_BLOCK_CODE_LEN);
+			code.rebuild();
+		}
+
+		/**
+		 * Folds a coded chunk into the model and rebuilds the code for the next chunk.
+		 */
+		private void update(byte[] chunk, int len)
+		{
+			Arrays.fill(chunkCounts, 0);
+			for (int i = 0; i < len; i++)
+				chunkCounts[chunk[i] & 0xFF]++;
+
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+				counts[s] = Math.max(1, (counts[s] >> 1) + chunkCounts[s]);	// Never 0, so every byte stays codable.
+
+			rebuild();
+		}
+	}
+
+	/**
+	 * Compresses `in` to `out` in a single pass, flushing `out` after every chunk. Neither stream is closed.
+	 * @param in Stream to compress; read until end of stream.
+	 * @param out Stream to write compressed chunks to.
+	 * @throws IOException If either stream fails.
+	 */
+	public static void compress(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] chunk = new byte[CHUNK_SIZE];
+		BitWriter bits = new BitWriter(out);
+		Model model = new Model();
+		int len;
+
+		bits.writeInt(MAGIC);
+		bits.flush();
+		while ((len = in.read(chunk, 0, CHUNK_SIZE)) >= 0)
+		{
+			if (len == 0)
+				continue;
+
+			int[] codes = model.code.codes;
+			int[] codeLens = model.code.lengths;
+
+			bits.writeInt(len);
+			for (int i = 0; i < len; i++)
+			{
+				int symbol = chunk[i] & 0xFF;
+				bits.write(codes[symbol] & 0xFFFFFFFFL, codeLens[symbol]);
+			}
+			bits.alignToByte();
+			bits.writeInt(0);
+			bits.flush();
+
+			model.update(chunk, len);
+		}
+		bits.writeInt(0);
+		bits.flush();
+	}
+
+	/**
+	 * Reverses compress(), writing and flushing each chunk as soon as it is decoded. Neither stream is closed.
+	 * @param in Compressed stream.
+	 * @param out Stream to write the original bytes to.
+	 * @throws IOException If either stream fails or the input is corrupt.
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] chunk = new byte[CHUNK_SIZE];
+		BitReader bits = new BitReader(in);
+		Model model = new Model();
+		TableDecoder decoder = new TableDecoder(model.code);
+		int len;
+
+		if (bits.readInt() != MAGIC)
+			throw new IOException("Not an adaptive Huffman compressed stream");
+
+		while ((len = bits.readInt()) != 0)
+		{
+			if (len < 0 || len > CHUNK_SIZE)
+				throw new IOException("Corrupt chunk length: " + len);
+
+			decoder.rebuild(model.code);
+			for (int i = 0; i < len; i++)
+				chunk[i] = (byte) decoder.decode(bits);
+			bits.alignToByte();
+			bits.readInt();
+
+			out.write(chunk, 0, len);
+			out.flush();
+			model.update(chunk, len);
+		}
+	}
+
+
+
+	/* Some tests: round trip of a stream whose statistics change half way through. */
+	public static void main(String[] args) throws IOException
+	{
+		Random rand = new Random(5);
+		byte[] data = new byte[4 << 20];
+		for (int i = 0; i < data.length; i++)
+			data[i] = i < data.length / 2 ? (byte) ('a' + rand.nextInt(4)) : (byte) rand.nextInt(256);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ByteArrayOutputStream restored = new ByteArrayOutputStream();
+		compress(new ByteArrayInputStream(data), compressed);
+		decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+
+		System.out.printf("%d bytes -> %d bytes, round trip %s%n", data.length, compressed.size(),
+				Arrays.equals(data, restored.toByteArray()) ? "OK" : "FAILED");
+	}
+}
@@ -0,0 +1,127 @@
+package jpsam3.dsa.huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads bits MSB-first, the mirror of BitWriter. Bytes are shifted into a 64-bit accumulator in bulk so that single bit
+ * and short code reads rarely touch the byte buffer.
+ */
+final class BitReader
+{
+	private final InputStream in;
+	private final byte[]      buf;
+	private int               pos, limit;
+	private long              bitBuf;		// Unread bits live in the low bitCount bits.
+	private int               bitCount;
+
+	BitReader(InputStream in)
+	{
+		this.in  = in;
+		this.buf = new byte[1 << 16];
+	}
+
+	/**
+	 * Tops the accumulator up with buffered bytes, up to at least 57 bits. The underlying stream is only read when fewer
+	 * than `needed` bits are available, so a reader on a live stream never blocks for bits it doesn't need yet.
+	 * @param needed Number of bits the caller needs, at most 57.
+	 */
+	private void refill(int needed) throws IOException
+	{
+		while (bitCount <= 56)
+		{
+			if (pos == limit)
+			{
+				if (bitCount >= needed)
+					return;
+
+				limit = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0)
+				{
+					limit = 0;
+					return;
+				}
+			}
+			bitBuf = (bitBuf << 8) | (buf[pos++] & 0xFF);
+			bitCount += 8;
+		}
+	}
+
+	/**
+	 * @return Next bit of the stream (0 or 1).
+	 * @throws EOFException If the stream has no bits left.
+	 */
+	int readBit() throws IOException
+	{
+		if (bitCount == 0)
+		{
+			refill(1);
+			if (bitCount == 0)
+				throw new EOFException("Unexpected end of compressed stream");
+		}
+		return (int) (bitBuf >>> --bitCount) & 1;
+	}
+
+	/**
+	 * @param len Number of bits to read (at most 57).
+	 * @return Next len bits, right-aligned.
+	 * @throws EOFException If the stream has fewer than len bits left.
+	 */
+	long readBits(int len) throws IOException
+	{
+		if (bitCount < len)
+		{
+			refill(len);
+			if (bitCount < len)
+				throw new EOFException("Unexpected end of compressed stream");
+		}
+		bitCount -= len;
+		return (bitBuf >>> bitCount) & ((1L << len) - 1);
+	}
+
+	/**
+	 * Looks at the next len bits without consuming them. Past the end of the stream the missing bits read as 0, so a
+	 * table decoder can always peek its full width at the tail of the data.
+	 * @param len Number of bits to look at (at most 31).
+	 * @return Next len bits, right-aligned.
+	 */
+	int peekBits(int len) throws IOException
+	{
+		if (bitCount < len)
+		{
+			refill(len);
+			if (bitCount < len)
+				return (int) (bitBuf << (len - bitCount)) & ((1 << len) - 1);
+		}
+		return (int) (bitBuf >>> (bitCount - len)) & ((1 << len) - 1);
+	}
+
+	/**
+	 * Consumes len bits that have already been looked at with peekBits().
+	 * @throws EOFException If the stream has fewer than len bits left.
+	 */
+	void skipBits(int len) throws IOException
+	{
+		if (bitCount < len)
+			throw new EOFException("Unexpected end of compressed stream");
+		bitCount -= len;
+	}
+
+	/**
+	 * Reads a 32-bit big-endian value.
+	 */
+	int readInt() throws IOException
+	{
+		return (int) readBits(32);
+	}
+
+	/**
+	 * Drops whatever is left of the current byte, the mirror of BitWriter.alignToByte().
+	 */
+	void alignToByte()
+	{
+		bitCount -= bitCount & 7;
+	}
+}
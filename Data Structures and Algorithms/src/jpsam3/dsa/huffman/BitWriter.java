@@ -0,0 +1,89 @@
+package jpsam3.dsa.huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Packs variable-length codes MSB-first into bytes. Codes are collected in a 64-bit accumulator and only spilled to the
+ * byte buffer once the accumulator can't take the next code, so the common case is a shift and an OR.
+ */
+final class BitWriter
+{
+	static final int MAX_CODE_LEN = 57;		// After a spill at most 7 bits are left, so 57 more always fit in 64.
+
+	private final OutputStream out;
+	private final byte[]       buf;
+	private int                pos;
+	private long               bitBuf;		// Pending bits live in the low bitCount bits.
+	private int                bitCount;
+
+	BitWriter(OutputStream out)
+	{
+		this.out = out;
+		this.buf = new byte[1 << 16];
+	}
+
+	/**
+	 * @param code Code to write, right-aligned.
+	 * @param len Number of bits of code to write (at most MAX_CODE_LEN).
+	 * @throws IOException If the underlying stream fails.
+	 */
+	void write(long code, int len) throws IOException
+	{
+		if (bitCount + len > 64)
+			spill();
+
+		bitBuf = (bitBuf << len) | code;
+		bitCount += len;
+	}
+
+	/**
+	 * Writes a 32-bit big-endian value.
+	 */
+	void writeInt(int value) throws IOException
+	{
+		write(value & 0xFFFFFFFFL, 32);
+	}
+
+	/**
+	 * Moves every complete byte out of the accumulator.
+	 */
+	private void spill() throws IOException
+	{
+		while (bitCount >= 8)
+		{
+			if (pos == buf.length)
+				flushBuffer();
+
+			bitCount -= 8;
+			buf[pos++] = (byte) (bitBuf >>> bitCount);
+		}
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+
+	/**
+	 * Pads the current byte with zero bits so the next write starts on a byte boundary.
+	 */
+	void alignToByte() throws IOException
+	{
+		int pad = (8 - (bitCount & 7)) & 7;
+		if (pad != 0)
+			write(0, pad);
+		spill();
+	}
+
+	/**
+	 * Aligns to a byte boundary and pushes everything written so far to the underlying stream.
+	 */
+	void flush() throws IOException
+	{
+		alignToByte();
+		flushBuffer();
+		out.flush();
+	}
+}
@@ -0,0 +1,157 @@
+package jpsam3.dsa.huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman code: only each symbol's code length is stored, and codes are handed out in order of (length,
+ * symbol), so a decoder can rebuild exactly the same code from the lengths alone.
+ */
+final class CanonicalCode
+{
+	static final int MAX_LEN = 31;			// Codes are kept in an int and lengths are sent as 5-bit fields.
+
+	final int[] lengths;					// lengths[s] == 0 means s doesn't occur.
+	final int[] codes;						// Right-aligned, read MSB-first.
+	int         maxLength;
+
+	private final int[]  lengthCounts = new int[MAX_LEN + 1];
+	private final long[] nextCode     = new long[MAX_LEN + 2];
+
+	/**
+	 * @param lengths Code length per symbol; must satisfy the Kraft inequality. Not copied.
+	 * @throws IllegalArgumentException If a length is out of range or the lengths don't form a prefix code.
+	 */
+	CanonicalCode(int[] lengths)
+	{
+		this.lengths = lengths;
+		this.codes   = new int[lengths.length];
+		rebuild();
+	}
+
+	/**
+	 * Reassigns the codes in place after the contents of lengths have changed, so one instance can serve block after
+	 * block without allocating. The codes are left alone if the new lengths are rejected.
+	 * @throws IllegalArgumentException If a length is out of range or the lengths don't form a prefix code.
+	 */
+	void rebuild()
+	{
+		int max = 0;
+
+		Arrays.fill(lengthCounts, 0);
+		for (int len : lengths)
+		{
+			if (len < 0 || len > MAX_LEN)
+				throw new IllegalArgumentException("Code length out of range: " + len);
+			lengthCounts[len]++;
+			max = Math.max(max, len);
+		}
+		lengthCounts[0] = 0;
+
+		// First code of each length; the usual deflate-style construction. Running out of codes means over-subscribed.
+		long code = 0;
+		for (int len = 1; len <= MAX_LEN; len++)
+		{
+			code = (code + lengthCounts[len - 1]) << 1;
+			nextCode[len] = code;
+			if (code + lengthCounts[len] > (1L << len))
+				throw new IllegalArgumentException("Code lengths over-subscribe the code space");
+		}
+
+		maxLength = max;
+		for (int s = 0; s < lengths.length; s++)
+			codes[s] = lengths[s] != 0 ? (int) nextCode[lengths[s]]++ : 0;
+	}
+
+	/**
+	 * @param symbol Symbol to describe.
+	 * @return Code for symbol as a string of 0s and 1s.
+	 */
+	String codeString(int symbol)
+	{
+		StringBuilder sb = new StringBuilder(lengths[symbol]);
+		for (int bit = lengths[symbol] -1; bit >= 0; bit--)
+			sb.append((codes[symbol] >>> bit) & 1);
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the number of symbols in use (9 bits), then either (8-bit symbol, 5-bit length) per symbol in use or, when
+	 * that would be bigger, a presence bitmap over all symbols followed by a 5-bit length per symbol in use.
+	 */
+	void writeLengths(BitWriter bits) throws IOException
+	{
+		int used = 0;
+		for (int len : lengths)
+			if (len != 0)
+				used++;
+
+		bits.write(used, 9);
+		if (isSparse(used, lengths.length))
+		{
+			for (int s = 0; s < lengths.length; s++)
+				if (lengths[s] != 0)
+					bits.write(s << 5 | lengths[s], 13);
+			return;
+		}
+
+		for (int len : lengths)
+			bits.write(len != 0 ? 1 : 0, 1);
+		for (int len : lengths)
+			if (len != 0)
+				bits.write(len, 5);
+	}
+
+	private static boolean isSparse(int used, int alphabetSize)
+	{
+		return used * 8 < alphabetSize;
+	}
+
+	/**
+	 * Reverses writeLengths().
+	 * @param alphabetSize Number of symbols the lengths were written for (at most 256).
+	 * @throws IOException If the lengths read aren't a valid prefix code.
+	 */
+	static CanonicalCode readLengths(BitReader bits, int alphabetSize) throws IOException
+	{
+		CanonicalCode code = new CanonicalCode(new int[alphabetSize]);
+		code.readLengths(bits);
+		return code;
+	}
+
+	/**
+	 * Reverses writeLengths() into this code's lengths array and rebuilds the codes in place.
+	 * @throws IOException If the lengths read aren't a valid prefix code.
+	 */
+	void readLengths(BitReader bits) throws IOException
+	{
+		int alphabetSize = lengths.length;
+		int used = (int) bits.readBits(9);
+		if (used > alphabetSize)
+			throw new IOException("Corrupt code length table");
+
+		Arrays.fill(lengths, 0);
+		if (isSparse(used, alphabetSize))
+		{
+			for (int i = 0; i < used; i++)
+			{
+				int entry = (int) bits.readBits(13);
+				int symbol = entry >>> 5;
+				if (symbol >= alphabetSize || (lengths[symbol] = entry & 0x1F) == 0)
+					throw new IOException("Corrupt code length table");
+			}
+		} else {
+			for (int s = 0; s < alphabetSize; s++)
+				lengths[s] = bits.readBit();
+			for (int s = 0; s < alphabetSize; s++)
+				if (lengths[s] != 0 && (lengths[s] = (int) bits.readBits(5)) == 0)
+					throw new IOException("Corrupt code length table");
+		}
+
+		try {
+			rebuild();
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt code length table", e);
+		}
+	}
+}
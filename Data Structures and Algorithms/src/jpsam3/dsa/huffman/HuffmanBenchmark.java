@@ -0,0 +1,275 @@
+package jpsam3.dsa.huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmarks every stage of the Huffman pipeline over generated corpora: histogram building, tree build (PriorityQueue
+ * vs HuffmanLengthBuilder), canonical code assignment, and streaming encode/decode. Corpora come from a fixed seed so
+ * runs are comparable between changes.
+ *
+ * Each benchmark is warmed up, then timed over several iterations; the best time is reported together with the bytes
+ * allocated per iteration (or per input byte for the throughput benchmarks), measured with the HotSpot per-thread
+ * allocation counter, so allocation regressions show up next to speed regressions.
+ *
+ * Usage: HuffmanBenchmark [corpus size in MB, default 16]
+ */
+public class HuffmanBenchmark
+{
+	private static final long SEED       = 0x5EED;
+	private static final int  WARMUP     = 5;
+	private static final int  ITERATIONS = 10;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Something to time. run() returns a value derived from its work so the JIT can't throw the work away.
+	 */
+	private interface Benchmark
+	{
+		long run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int size = (args.length > 0 ? Integer.parseInt(args[0]) : 16) << 20;
+
+		String[] names = {"uniform", "zipfian", "log-text", "binary"};
+		byte[][] corpora = {uniform(size), zipfian(size), logText(size), binary(size)};
+
+		System.out.printf("%-10s %-22s %12s %12s %14s%n", "corpus", "benchmark", "best", "MB/s", "alloc");
+		for (int c = 0; c < corpora.length; c++)
+			runAll(names[c], corpora[c]);
+	}
+
+	private static void runAll(String name, final byte[] data) throws IOException
+	{
+		final long[] freqs = new long[HuffmanCodeCompressor.ALPHABET_SIZE];
+		for (byte b : data)
+			freqs[b & 0xFF]++;
+		final HuffmanLengthBuilder builder = new HuffmanLengthBuilder(HuffmanCodeCompressor.ALPHABET_SIZE);
+		final int[] lengths = new int[HuffmanCodeCompressor.ALPHABET_SIZE];
+
+		ByteArrayOutputStream packed = new ByteArrayOutputStream();
+		HuffmanCodeCompressor.compress(new ByteArrayInputStream(data), packed);
+		final byte[] compressed = packed.toByteArray();
+
+		final File file = File.createTempFile("huffbench", ".bin");
+		FileOutputStream fileOut = new FileOutputStream(file);
+		fileOut.write(data);
+		fileOut.close();
+
+		throughput(name, "histogram (array)", data.length, new Benchmark() {
+			public long run()
+			{
+				long[] counts = new long[HuffmanCodeCompressor.ALPHABET_SIZE];
+				for (byte b : data)
+					counts[b & 0xFF]++;
+				return counts[0];
+			}
+		});
+		final HuffmanCodeCompressor counter = new HuffmanCodeCompressor();
+		throughput(name, "histogram (mapped)", data.length, new Benchmark() {
+			public long run()
+			{
+				counter.readFileMapped(file.getPath());		// Counts keep adding up, which costs the same.
+				return counter.frequencies()[0];
+			}
+		});
+		latency(name, "tree (PriorityQueue)", new Benchmark() {
+			public long run() { return HuffmanCodeCompressor.staticCode(freqs).maxLength; }
+		});
+		latency(name, "tree (length builder)", new Benchmark() {
+			public long run() { return builder.build(freqs, lengths, HuffmanCodeCompressor.MAX_BLOCK_CODE_LEN); }
+		});
+		latency(name, "canonical codes", new Benchmark() {
+			public long run() { return new CanonicalCode(lengths).maxLength; }
+		});
+		throughput(name, "encode", data.length, new Benchmark() {
+			public long run() throws IOException
+			{
+				CountingStream out = new CountingStream();
+				HuffmanCodeCompressor.compress(new ByteArrayInputStream(data), out);
+				return out.count;
+			}
+		});
+		throughput(name, "decode", data.length, new Benchmark() {
+			public long run() throws IOException
+			{
+				CountingStream out = new CountingStream();
+				HuffmanCodeCompressor.decompress(new ByteArrayInputStream(compressed), out);
+				return out.count;
+			}
+		});
+		System.out.printf("%-10s %-22s %11.1f%%%n", name, "compressed size", 100.0 * compressed.length / data.length);
+
+		if (!file.delete())
+			file.deleteOnExit();
+	}
+
+	/**
+	 * Times b and reports its best time, MB/s over bytes of input and bytes allocated per input byte.
+	 */
+	private static void throughput(String corpus, String name, int bytes, Benchmark b) throws IOException
+	{
+		long[] result = measure(b);
+		System.out.printf("%-10s %-22s %9.2f ms %12.1f %10.3f B/B%n", corpus, name, result[0] / 1e6,
+				bytes / (result[0] / 1e9) / (1 << 20), (double) result[1] / bytes);
+	}
+
+	/**
+	 * Times b and reports its best time per call and bytes allocated per call.
+	 */
+	private static void latency(String corpus, String name, Benchmark b) throws IOException
+	{
+		long[] result = measure(b);
+		System.out.printf("%-10s %-22s %9.2f us %12s %12d B%n", corpus, name, result[0] / 1e3, "-", result[1]);
+	}
+
+	/**
+	 * @return {best nanoseconds per call, bytes allocated per call}. Short benchmarks are repeated within one
+	 * measurement until they take at least a millisecond.
+	 */
+	private static long[] measure(Benchmark b) throws IOException
+	{
+		long sink = 0;
+		int reps = 1;
+		long start = System.nanoTime();
+		sink += b.run();
+		while (System.nanoTime() - start < 1000000 && reps < (1 << 20))
+		{
+			sink += b.run();
+			reps++;
+		}
+
+		for (int i = 0; i < WARMUP; i++)
+			for (int r = 0; r < reps; r++)
+				sink += b.run();
+
+		long best = Long.MAX_VALUE, allocated = 0;
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < ITERATIONS; i++)
+		{
+			long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+			start = System.nanoTime();
+			for (int r = 0; r < reps; r++)
+				sink += b.run();
+			long time = (System.nanoTime() - start) / reps;
+			long bytes = (THREADS.getThreadAllocatedBytes(thread) - bytesBefore) / reps;
+			if (time < best)								// Allocation from the same iteration as the time.
+			{
+				best = time;
+				allocated = bytes;
+			}
+		}
+
+		if (sink == 42)							// Keeps sink alive.
+			System.out.print("");
+		return new long[] {best, allocated};
+	}
+
+	/**
+	 * OutputStream that only counts what is written to it.
+	 */
+	private static class CountingStream extends OutputStream
+	{
+		private long count;
+
+		@Override
+		public void write(int b) { count++; }
+
+		@Override
+		public void write(byte[] b, int off, int len) { count += len; }
+	}
+
+	/* Corpora */
+
+	private static byte[] uniform(int size)
+	{
+		byte[] data = new byte[size];
+		new Random(SEED).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Bytes drawn from a Zipf(1.0) distribution over all 256 values, most frequent first.
+	 */
+	private static byte[] zipfian(int size)
+	{
+		double[] cdf = new double[256];
+		double total = 0;
+		for (int i = 0; i < 256; i++)
+			cdf[i] = total += 1.0 / (i + 1);
+		for (int i = 0; i < 256; i++)
+			cdf[i] /= total;
+
+		Random rand = new Random(SEED);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+		{
+			int s = Arrays.binarySearch(cdf, rand.nextDouble());
+			data[i] = (byte) (s < 0 ? -s - 1 : s);
+		}
+		return data;
+	}
+
+	/**
+	 * Lines shaped like an application log: timestamp, level, component and a templated message.
+	 */
+	private static byte[] logText(int size)
+	{
+		String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+		String[] components = {"http.server", "db.pool", "auth", "scheduler", "cache"};
+		String[] messages = {"request completed in %d ms", "connection %d returned to pool", "user %d logged in",
+				"job %d finished", "miss for key user:%d", "retrying after timeout (attempt %d)"};
+
+		Random rand = new Random(SEED);
+		StringBuilder sb = new StringBuilder(size + 256);
+		long time = 1350000000000L;
+		while (sb.length() < size)
+		{
+			time += rand.nextInt(2000);
+			sb.append(String.format("2012-10-15T%02d:%02d:%02d.%03d ", time / 3600000 % 24, time / 60000 % 60,
+					time / 1000 % 60, time % 1000));
+			sb.append(levels[rand.nextInt(levels.length)]).append(' ');
+			sb.append(components[rand.nextInt(components.length)]).append(" - ");
+			sb.append(String.format(messages[rand.nextInt(messages.length)], rand.nextInt(10000))).append('\n');
+		}
+
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) sb.charAt(i);
+		return data;
+	}
+
+	/**
+	 * Records of little-endian small integers, flags and the odd random field, like a typical binary table dump.
+	 */
+	private static byte[] binary(int size)
+	{
+		Random rand = new Random(SEED);
+		byte[] data = new byte[size];
+		for (int i = 0; i + 16 <= size; i += 16)
+		{
+			int id = i / 16;
+			int value = (int) Math.abs(rand.nextGaussian() * 1000);
+			data[i]      = (byte) id;
+			data[i + 1]  = (byte) (id >>> 8);
+			data[i + 2]  = (byte) (id >>> 16);
+			data[i + 4]  = (byte) value;
+			data[i + 5]  = (byte) (value >>> 8);
+			data[i + 8]  = (byte) (rand.nextInt(8) == 0 ? 1 : 0);
+			data[i + 12] = (byte) rand.nextInt(256);
+			data[i + 13] = (byte) rand.nextInt(256);
+		}
+		return data;
+	}
+}
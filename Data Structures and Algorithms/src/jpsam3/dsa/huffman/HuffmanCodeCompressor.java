@@ -6,25 +6,38 @@ package jpsam3.dsa.huffman;
  */
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
 
 public class HuffmanCodeCompressor
 {
 	private static final int ASCII_BIT_LEN = 8;
-	private static final int ASCII_PRINTABLE_CHARS = 95;
-	private static final int ASCII_DIFF = 32;
+	static final int ALPHABET_SIZE = 256;					// every byte value
+	static final int BLOCK_SIZE = 1 << 20;					// bytes per independently coded block
+	static final int MAX_BLOCK_CODE_LEN = 15;				// longest code used in blocks, keeps decoder subtables tiny
+	private static final int STREAM_MAGIC = 0x48554631;		// "HUF1"
+	private static final int MAP_WINDOW = 1 << 30;			// bytes mapped at a time by readFileMapped()
 
-	private int totalChars;
-	private int[] charFreqs;
-	private String[] charCodes;
+	private long totalChars;
+	private long[] charFreqs;
+	private CanonicalCode charCodes;
 
 	public HuffmanCodeCompressor()
 	{
 		totalChars = 0;
-		charFreqs = new int[ASCII_PRINTABLE_CHARS];
-		charCodes = new String[ASCII_PRINTABLE_CHARS];
+		charFreqs = new long[ALPHABET_SIZE];
+		charCodes = new CanonicalCode(new int[ALPHABET_SIZE]);
 	}
 
 	/*
@@ -47,6 +60,90 @@ public class HuffmanCodeCompressor
 		}
 	}
 
+	/*
+	 * Parallel version of readFile(): splits the file into BLOCK_SIZE blocks, builds a histogram per block on the given
+	 * pool and merges them into charFreqs. Counts raw bytes, so unlike readFile() line breaks are counted too.
+	 */
+	public void readFileParallel(String filePath, ForkJoinPool pool)
+	{
+		RandomAccessFile in;
+
+		try {
+			in = new RandomAccessFile(filePath, "r");
+
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			long[] counts = pool.invoke(new ParallelHuffmanCompressor.HistogramTask(channel, size, 0, blocks));
+
+			for (int i = 0; i < ALPHABET_SIZE; i++)
+				charFreqs[i] += counts[i];
+			totalChars += size;
+
+			in.close();
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occured.\n");
+		}
+	}
+
+	/*
+	 * Zero-copy version of readFile(): maps the file in MAP_WINDOW slices and counts bytes straight out of the mapping,
+	 * 8 at a time through getLong(). The 8 lanes are spread over 4 count arrays so that a run of one byte value doesn't
+	 * make every increment wait on the previous store to the same counter. Nothing is allocated per byte or per line.
+	 * Counts raw bytes, so unlike readFile() line breaks are counted too.
+	 */
+	public void readFileMapped(String filePath)
+	{
+		RandomAccessFile in;
+		int[] c0 = new int[ALPHABET_SIZE], c1 = new int[ALPHABET_SIZE];
+		int[] c2 = new int[ALPHABET_SIZE], c3 = new int[ALPHABET_SIZE];
+
+		try {
+			in = new RandomAccessFile(filePath, "r");
+
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+
+			for (long start = 0; start < size; start += MAP_WINDOW) {
+				int len = (int) Math.min(MAP_WINDOW, size - start);
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+				int i;
+
+				for (i = 0; i + 8 <= len; i += 8) {			// each array sees at most MAP_WINDOW/4 bytes, so ints can't overflow
+					long w = buf.getLong(i);
+					c0[(int) w & 0xFF]++;
+					c1[(int) (w >>> 8) & 0xFF]++;
+					c2[(int) (w >>> 16) & 0xFF]++;
+					c3[(int) (w >>> 24) & 0xFF]++;
+					c0[(int) (w >>> 32) & 0xFF]++;
+					c1[(int) (w >>> 40) & 0xFF]++;
+					c2[(int) (w >>> 48) & 0xFF]++;
+					c3[(int) (w >>> 56)]++;
+				}
+				for (; i < len; i++)
+					c0[buf.get(i) & 0xFF]++;
+
+				for (int c = 0; c < ALPHABET_SIZE; c++) {		// fold this window into the running totals
+					charFreqs[c] += (long) c0[c] + c1[c] + c2[c] + c3[c];
+					c0[c] = c1[c] = c2[c] = c3[c] = 0;
+				}
+			}
+			totalChars += size;
+
+			in.close();
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occured.\n");
+		}
+	}
+
+	/*
+	 * Returns the frequency of every byte value read so far (not a copy).
+	 */
+	long[] frequencies()
+	{
+		return charFreqs;
+	}
+
 	/*
 	 * Handles the current line, incrementing each character's frequency if it's found in the line.
 	 * Also adds the total number of characters in the line to the overall totalChars counter.
@@ -58,44 +155,56 @@ public class HuffmanCodeCompressor
 		line = strLine.toCharArray();
 		totalChars += line.length;
 
-		for (char c : line)			/* for each character in the line, if it's a printable ASCII char, increment frequency in freq_arr */
-			if (c >= ASCII_DIFF && c <= 126)
-				charFreqs[c-ASCII_DIFF]++;
+		for (char c : line)			/* for each character in the line, if it fits in a byte, increment frequency in freq_arr */
+			if (c < ALPHABET_SIZE)
+				charFreqs[c]++;
 	}
 
 	/*
 	 * Makes the array of characters into a priority queue.
 	 */
-	private PriorityQueue<Node> queueFromArray(int[] iArr)
+	private static PriorityQueue<Node> queueFromArray(long[] iArr)
 	{
 		PriorityQueue<Node> q;
 
 		q = new PriorityQueue<Node>();
 		for (int i = 0; i < iArr.length; i++)
 			if (iArr[i] > 0)
-				q.add(new Node(iArr[i], (char) (i+ASCII_DIFF)));
+				q.add(new Node(iArr[i], (char) i));
 
 		return q;
 	}
 
+	/*
+	 * Assigns each of the characters read so far its Huffman code. Lengths come from HuffmanLengthBuilder, limited to
+	 * CanonicalCode.MAX_LEN, so a very skewed file (e.g. Fibonacci-like frequencies) gets the best code that fits
+	 * rather than an error.
+	 */
+	public void constructTree()
+	{
+		int[] lengths = new int[ALPHABET_SIZE];
+
+		new HuffmanLengthBuilder(ALPHABET_SIZE).build(charFreqs, lengths, CanonicalCode.MAX_LEN);
+		charCodes = new CanonicalCode(lengths);
+	}
+
 	/*
 	 * Constructs binary tree from used characters by polling them from PriorityQueue.
-	 * Places the root of the constructed tree in PriorityQueue q once finished.
+	 * Returns the root of the constructed tree (null if every frequency is 0).
 	 * Will be a _complete_ binary tree.
 	 */
-	public void constructTree()
+	private static Node buildTree(long[] freqs)
 	{
 		PriorityQueue<Node> q;
 
-		q = queueFromArray(charFreqs);
+		q = queueFromArray(freqs);
+		if (q.isEmpty())
+			return null;
 
-		if (q.size() == 1)			// exception case for when only a single character is present in the file (can be multiple of the same character); makes it a child node of an empty parent (so it gets assigned a 1-bit code)
+		if (q.size() == 1)			// exception case for when only a single character is present in the file (can be multiple of the same character); pairs it with an unused dummy leaf (so it gets assigned a 1-bit code)
 		{
-			Node parent = new Node(0);
-
 			Node solo = q.poll();
-			parent.left = solo;
-			q.add(parent);
+			q.add(new Node(0, solo, new Node(0, (char) (solo.character ^ 1))));
 		}
 
 		while (q.size() != 1)		// builds the prefix tree
@@ -113,20 +222,46 @@ public class HuffmanCodeCompressor
 			q.add(parent);
 		}
 
-		traverseTree(q.poll(), "");
+		return q.poll();
 	}
 
 	/*
-	 * Traverses the tree that has been constructed recursively and assigns Huffman codes to each Node in the tree.
+	 * Builds the canonical code for the given frequencies from the PriorityQueue-built tree. Unlimited, so it throws if
+	 * a code would need more than CanonicalCode.MAX_LEN bits; kept as the reference HuffmanBenchmark compares against.
 	 */
-	private void traverseTree(Node node, String code)
+	static CanonicalCode staticCode(long[] freqs)
 	{
-		if (node != null)			// node == null means we've reached the end of a path
-		{
-			charCodes[node.character-ASCII_DIFF] = code;		// add current code to this node
-			traverseTree(node.left, code + "1");	// continue for left children
-			traverseTree(node.right, code + "0");	// continue for right children
+		return new CanonicalCode(codeLengths(buildTree(freqs)));
+	}
+
+	/*
+	 * Returns the depth of every leaf in the tree (0 for symbols not in it), i.e. the code length each symbol gets.
+	 * Only the lengths are kept; the codes themselves are assigned canonically from them by CanonicalCode.
+	 */
+	private static int[] codeLengths(Node root)
+	{
+		int[] lengths = new int[ALPHABET_SIZE];
+
+		if (root != null)
+			traverseTree(root, 0, lengths);
+
+		return lengths;
+	}
+
+	/*
+	 * Traverses the tree that has been constructed recursively and records the depth of each leaf in the tree.
+	 */
+	private static void traverseTree(Node node, int depth, int[] lengths)
+	{
+		if (node.isLeaf()) {
+			if (depth > CanonicalCode.MAX_LEN)
+				throw new IllegalStateException("Huffman code too long: " + depth + " bits");
+
+			lengths[node.character] = depth;
+			return;
 		}
+		traverseTree(node.left, depth + 1, lengths);	// continue for left children
+		traverseTree(node.right, depth + 1, lengths);	// continue for right children
 	}
 
 	/*
@@ -135,16 +270,17 @@ public class HuffmanCodeCompressor
 	public void printSizeOfFile()
 	{
 		float oldBytes, newBytes, savings;
-		int i, subtotal, total;
+		int i;
+		long subtotal, total;
 
 		total = 0;
 		oldBytes = (float) (((float) totalChars * (float) ASCII_BIT_LEN) / 8.0);
 		System.out.printf("Original size of file: %.2f bytes\n", oldBytes);
 
-		for (i = 0; i < ASCII_PRINTABLE_CHARS; i++)
+		for (i = 0; i < ALPHABET_SIZE; i++)
 			if (charFreqs[i] > 0)
 			{
-				subtotal = charCodes[i].length() * charFreqs[i];
+				subtotal = charCodes.lengths[i] * charFreqs[i];
 				total += subtotal;
 			}
 
@@ -162,9 +298,120 @@ public class HuffmanCodeCompressor
 	{
 		int i;
 
-		for (i = 0; i < ASCII_PRINTABLE_CHARS; i++)
+		for (i = 0; i < ALPHABET_SIZE; i++)
 			if (charFreqs[i] > 0)
-				System.out.printf("%c : %s\n", (char) i+ASCII_DIFF, charCodes[i]);
+				System.out.printf("%c : %s\n", (char) i, charCodes.codeString(i));
+	}
+
+	/*
+	 * Compresses everything in `in` to `out`. Works on BLOCK_SIZE blocks, each with its own tree, so memory use is
+	 * constant no matter how long the input is. Neither stream is closed.
+	 *
+	 * Format: magic, then per block: [byte count:32][code lengths][codes][pad to byte], ending with a 0 byte count.
+	 * Codes are canonical, so the lengths (see CanonicalCode.writeLengths()) are all a decoder needs to rebuild them.
+	 */
+	public static void compress(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] block = new byte[BLOCK_SIZE];
+		BlockCoder coder = new BlockCoder();
+		BitWriter bits = new BitWriter(out);
+		int len;
+
+		bits.writeInt(STREAM_MAGIC);
+		while ((len = readBlock(in, block)) > 0)
+			coder.encodeBlock(block, 0, len, bits);
+		bits.writeInt(0);
+		bits.flush();
+	}
+
+	/*
+	 * Reverses compress(), writing the original bytes to `out`. Neither stream is closed.
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] block = new byte[BLOCK_SIZE];
+		BlockCoder coder = new BlockCoder();
+		BitReader bits = new BitReader(in);
+		int len;
+
+		if (bits.readInt() != STREAM_MAGIC)
+			throw new IOException("Not a Huffman compressed stream");
+
+		while ((len = coder.decodeBlock(bits, block, 0)) != 0)
+			out.write(block, 0, len);
+		out.flush();
+	}
+
+	/*
+	 * Scratch space for coding blocks: the histogram, the length builder, the code and the decoder tables are allocated
+	 * once and rebuilt in place for every block, so coding a block allocates nothing. Not thread-safe; use one per thread.
+	 */
+	static final class BlockCoder
+	{
+		private final long[]               freqs   = new long[ALPHABET_SIZE];
+		private final HuffmanLengthBuilder builder = new HuffmanLengthBuilder(ALPHABET_SIZE);
+		private final CanonicalCode        code    = new CanonicalCode(new int[ALPHABET_SIZE]);
+		private final TableDecoder         decoder = new TableDecoder(code);
+
+		/*
+		 * Writes block[off .. off+len) as one self-contained block: [byte count:32][code lengths][codes][pad to byte].
+		 * Code lengths are limited to MAX_BLOCK_CODE_LEN.
+		 */
+		void encodeBlock(byte[] block, int off, int len, BitWriter bits) throws IOException
+		{
+			Arrays.fill(freqs, 0);
+			for (int i = off; i < off + len; i++)
+				freqs[block[i] & 0xFF]++;
+
+			builder.build(freqs, code.lengths, MAX_BLOCK_CODE_LEN);
+			code.rebuild();
+			int[] codes = code.codes;
+			int[] codeLens = code.lengths;
+
+			bits.writeInt(len);
+			code.writeLengths(bits);
+			for (int i = off; i < off + len; i++)
+			{
+				int symbol = block[i] & 0xFF;
+				bits.write(codes[symbol] & 0xFFFFFFFFL, codeLens[symbol]);
+			}
+			bits.alignToByte();
+		}
+
+		/*
+		 * Reads one block written by encodeBlock() into block[off ..], which must have room for BLOCK_SIZE bytes.
+		 * Returns the number of bytes decoded, 0 if the block was the end marker.
+		 */
+		int decodeBlock(BitReader bits, byte[] block, int off) throws IOException
+		{
+			int len = bits.readInt();
+
+			if (len == 0)
+				return 0;
+			if (len < 0 || len > BLOCK_SIZE)
+				throw new IOException("Corrupt block length: " + len);
+
+			code.readLengths(bits);
+			decoder.rebuild(code);
+			for (int i = off; i < off + len; i++)
+				block[i] = (byte) decoder.decode(bits);
+			bits.alignToByte();
+
+			return len;
+		}
+	}
+
+	/*
+	 * Fills `block` from `in` as far as the stream allows; returns the number of bytes read (0 at end of stream).
+	 */
+	private static int readBlock(InputStream in, byte[] block) throws IOException
+	{
+		int len = 0, n;
+
+		while (len < block.length && (n = in.read(block, len, block.length - len)) > 0)
+			len += n;
+
+		return len;
 	}
 
 	public static void main(String[] args)
@@ -176,16 +423,44 @@ public class HuffmanCodeCompressor
 		test.printSizeOfFile();
 		System.out.printf("\n");
 		test.printCodes();
+
+		try {
+			byte[] original = readAllBytes("jpsam3/dsa/huffman/huffman.txt");
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			ByteArrayOutputStream restored = new ByteArrayOutputStream();
+
+			compress(new ByteArrayInputStream(original), compressed);
+			decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+
+			System.out.printf("\nStream compressed %d bytes to %d bytes, round trip %s\n", original.length, compressed.size(),
+					Arrays.equals(original, restored.toByteArray()) ? "OK" : "FAILED");
+		} catch (IOException e) {
+			System.err.printf("Fatal IO error occured.\n");
+		}
+	}
+
+	private static byte[] readAllBytes(String filePath) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(filePath);
+		byte[] buf = new byte[8192];
+		int n;
+
+		while ((n = in.read(buf)) > 0)
+			bytes.write(buf, 0, n);
+		in.close();
+
+		return bytes.toByteArray();
 	}
 
-	public class Node implements Comparable<Node>
+	public static class Node implements Comparable<Node>
 	{
-		public int count;
+		public long count;
 		public char character;
 		public Node left;
 		public Node right;
 
-		public Node(int initCount, char initChar, Node initLeft, Node initRight)
+		public Node(long initCount, char initChar, Node initLeft, Node initRight)
 		{
 			count = initCount;
 			character = initChar;
@@ -193,23 +468,33 @@ public class HuffmanCodeCompressor
 			right = initRight;
 		}
 
-		public Node(int initCount, char initChar)
+		public Node(long initCount, char initChar)
 		{
 			this(initCount, initChar, null, null);
 		}
 
 
-		public Node(int initCount)
+		public Node(long initCount)
 		{
 			this(initCount, ' ', null, null);
 		}
 
+		public Node(long initCount, Node initLeft, Node initRight)
+		{
+			this(initCount, ' ', initLeft, initRight);
+		}
+
+		public boolean isLeaf()
+		{
+			return left == null && right == null;
+		}
+
 		@Override
 		public int compareTo(Node n)
 		{
 			int compValue;
 
-			compValue = this.count - n.count;
+			compValue = Long.compare(this.count, n.count);
 			return compValue;
 		}
 	}
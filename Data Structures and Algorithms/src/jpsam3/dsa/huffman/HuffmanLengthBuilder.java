@@ -0,0 +1,210 @@
+package jpsam3.dsa.huffman;
+
+import java.util.Arrays;
+
+/**
+ * Computes Huffman code lengths straight from a frequency array, without building a Node tree or going through a
+ * PriorityQueue. All scratch space is allocated up front, so an instance can be reused for every block of a stream
+ * without allocating anything.
+ *
+ * Symbols are sorted by frequency once; lengths are then computed in place with Moffat and Katajainen's algorithm
+ * (A. Moffat, J. Katajainen, "In-place calculation of minimum-redundancy codes", 1995). If a maximum length is given and
+ * the optimal code would exceed it, the optimal length-limited code is computed by package-merge instead.
+ */
+final class HuffmanLengthBuilder
+{
+	private static final int SYMBOL_BITS = 16;			// Low bits of a sort key hold the symbol, the rest the frequency.
+	private static final long SYMBOL_MASK = (1L << SYMBOL_BITS) - 1;
+
+	private final int      alphabetSize;
+	private final long[]   sorted;						// (frequency << SYMBOL_BITS | symbol), ascending.
+	private final long[]   work;						// Moffat-Katajainen's in-place array.
+	private final long[]   listA, listB;				// Package-merge lists for two adjacent levels.
+	private final byte[][] isLeaf;						// Package-merge: isLeaf[level][i], is item i of that level a leaf.
+
+	/**
+	 * @param alphabetSize Number of symbols frequencies will be given for (at most 65536).
+	 */
+	HuffmanLengthBuilder(int alphabetSize)
+	{
+		if (alphabetSize < 1 || alphabetSize > (1 << SYMBOL_BITS))
+			throw new IllegalArgumentException("Unsupported alphabet size: " + alphabetSize);
+
+		this.alphabetSize = alphabetSize;
+		sorted = new long[alphabetSize];
+		work   = new long[alphabetSize];
+		listA  = new long[2 * alphabetSize];
+		listB  = new long[2 * alphabetSize];
+		isLeaf = new byte[CanonicalCode.MAX_LEN + 1][2 * alphabetSize];
+	}
+
+	/**
+	 * Computes optimal (unlimited) code lengths.
+	 * @param freqs Frequency per symbol; symbols with frequency 0 get length 0.
+	 * @param lengths Output: code length per symbol.
+	 * @return Longest code length.
+	 */
+	int build(long[] freqs, int[] lengths)
+	{
+		return build(freqs, lengths, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Computes optimal code lengths with no code longer than maxLen bits. A lone symbol gets a 1-bit code.
+	 * @param freqs Frequency per symbol (less than 2^47 each); symbols with frequency 0 get length 0.
+	 * @param lengths Output: code length per symbol.
+	 * @param maxLen Longest code allowed.
+	 * @return Longest code length.
+	 */
+	int build(long[] freqs, int[] lengths, int maxLen)
+	{
+		int n = 0;
+		for (int s = 0; s < alphabetSize; s++)
+		{
+			lengths[s] = 0;
+			if (freqs[s] > 0)
+				sorted[n++] = freqs[s] << SYMBOL_BITS | s;
+		}
+
+		if (n == 0)
+			return 0;
+		if (n == 1)
+		{
+			lengths[(int) (sorted[0] & SYMBOL_MASK)] = 1;
+			return 1;
+		}
+		if (maxLen < 31 && n > (1 << maxLen))
+			throw new IllegalArgumentException(n + " symbols can't be coded in " + maxLen + " bits");
+
+		Arrays.sort(sorted, 0, n);
+		for (int i = 0; i < n; i++)
+			work[i] = sorted[i] >>> SYMBOL_BITS;
+
+		minimumRedundancy(work, n);
+		if (work[0] > maxLen)								// work[0] belongs to the rarest symbol, so it's the longest.
+			packageMerge(n, Math.min(maxLen, CanonicalCode.MAX_LEN));
+
+		for (int i = 0; i < n; i++)
+			lengths[(int) (sorted[i] & SYMBOL_MASK)] = (int) work[i];
+		return (int) work[0];
+	}
+
+	/**
+	 * Moffat-Katajainen: turns the ascending weights a[0..n) into code lengths in place, in three linear passes.
+	 */
+	private static void minimumRedundancy(long[] a, int n)
+	{
+		int root, leaf, next, avbl, used, depth;
+
+		// First pass, left to right: combine the two smallest items; a[] holds weights and then parent pointers.
+		a[0] += a[1];
+		root = 0;
+		leaf = 2;
+		for (next = 1; next < n - 1; next++)
+		{
+			if (leaf >= n || a[root] < a[leaf])			// First item of the pair.
+			{
+				a[next] = a[root];
+				a[root++] = next;
+			} else {
+				a[next] = a[leaf++];
+			}
+
+			if (leaf >= n || (root < next && a[root] < a[leaf]))	// Second item of the pair.
+			{
+				a[next] += a[root];
+				a[root++] = next;
+			} else {
+				a[next] += a[leaf++];
+			}
+		}
+
+		// Second pass, right to left: parent pointers become internal node depths.
+		a[n - 2] = 0;
+		for (next = n - 3; next >= 0; next--)
+			a[next] = a[(int) a[next]] + 1;
+
+		// Third pass, right to left: internal node depths become leaf depths.
+		avbl = 1;
+		used = depth = 0;
+		root = n - 2;
+		next = n - 1;
+		while (avbl > 0)
+		{
+			while (root >= 0 && a[root] == depth)
+			{
+				used++;
+				root--;
+			}
+			while (avbl > used)
+			{
+				a[next--] = depth;
+				avbl--;
+			}
+			avbl = 2 * used;
+			depth++;
+			used = 0;
+		}
+	}
+
+	/**
+	 * Package-merge: writes optimal code lengths of at most maxLen bits for the ascending weights sorted[0..n) into
+	 * work[0..n). Each level's list is the leaves merged with pairs ("packages") of the level below; choosing the
+	 * 2n-2 cheapest items of the top list and following packages down gives each leaf's length as the number of
+	 * levels it was chosen at.
+	 */
+	private void packageMerge(int n, int maxLen)
+	{
+		long[] prev = listA, cur = listB;
+		int prevLen = n;
+
+		for (int i = 0; i < n; i++)						// Deepest level: leaves only.
+		{
+			prev[i] = sorted[i] >>> SYMBOL_BITS;
+			isLeaf[maxLen][i] = 1;
+		}
+
+		for (int level = maxLen - 1; level >= 1; level--)
+		{
+			int packages = prevLen / 2;
+			int leafIdx = 0, pkgIdx = 0, len = 0;
+			byte[] flags = isLeaf[level];
+
+			while (leafIdx < n || pkgIdx < packages)
+			{
+				long leafWeight = leafIdx < n ? sorted[leafIdx] >>> SYMBOL_BITS : Long.MAX_VALUE;
+				long pkgWeight  = pkgIdx < packages ? prev[2 * pkgIdx] + prev[2 * pkgIdx + 1] : Long.MAX_VALUE;
+
+				if (leafWeight <= pkgWeight)
+				{
+					cur[len] = leafWeight;
+					flags[len++] = 1;
+					leafIdx++;
+				} else {
+					cur[len] = pkgWeight;
+					flags[len++] = 0;
+					pkgIdx++;
+				}
+			}
+
+			long[] swap = prev;
+			prev = cur;
+			cur = swap;
+			prevLen = len;
+		}
+
+		Arrays.fill(work, 0, n, 0);
+		int take = 2 * n - 2;
+		for (int level = 1; level <= maxLen && take > 0; level++)
+		{
+			byte[] flags = isLeaf[level];
+			int leaves = 0;
+			for (int i = 0; i < take; i++)
+				leaves += flags[i];
+
+			for (int i = 0; i < leaves; i++)				// Chosen leaves are always the cheapest ones.
+				work[i]++;
+			take = 2 * (take - leaves);
+		}
+	}
+}
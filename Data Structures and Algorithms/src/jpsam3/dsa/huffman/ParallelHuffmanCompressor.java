@@ -0,0 +1,419 @@
+package jpsam3.dsa.huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel, random-access variant of HuffmanCodeCompressor.compress(). The input file is cut into BLOCK_SIZE frames, each
+ * coded on its own (same block format as the streaming compressor) on a fork-join pool, and an index of frame offsets is
+ * appended so that frames can be decoded in parallel or individually.
+ *
+ * File layout:
+ * [magic:4][frame 0]...[frame n-1][index: n x (offset:8, raw length:4)][frame count:4][index offset:8][magic:4]
+ */
+public class ParallelHuffmanCompressor
+{
+	private static final int MAGIC        = 0x48554650;	// "HUFP"
+	private static final int FOOTER_BYTES = 16;
+	private static final int BLOCK_SIZE   = HuffmanCodeCompressor.BLOCK_SIZE;
+
+	private static final ThreadLocal<HuffmanCodeCompressor.BlockCoder> CODERS =	// Per-thread block coding scratch.
+			new ThreadLocal<HuffmanCodeCompressor.BlockCoder>() {
+				@Override
+				protected HuffmanCodeCompressor.BlockCoder initialValue() { return new HuffmanCodeCompressor.BlockCoder(); }
+			};
+
+	/**
+	 * Compresses inPath into outPath, coding frames in waves of a few per worker so memory stays bounded.
+	 * @param inPath File to compress.
+	 * @param outPath File to write the framed output to.
+	 * @param pool Pool to encode frames on.
+	 * @throws IOException If either file can't be read or written.
+	 */
+	public static void compress(String inPath, String outPath, ForkJoinPool pool) throws IOException
+	{
+		RandomAccessFile in  = new RandomAccessFile(inPath, "r");
+		RandomAccessFile out = new RandomAccessFile(outPath, "rw");
+		try {
+			FileChannel inChannel = in.getChannel();
+			long size = inChannel.size();
+			int frameCount = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			int wave = Math.max(1, pool.getParallelism() * 4);
+
+			long[] offsets = new long[frameCount];
+			out.setLength(0);
+			out.writeInt(MAGIC);
+
+			byte[][] encoded = new byte[Math.min(wave, Math.max(frameCount, 1))][];
+			for (int first = 0; first < frameCount; first += wave)
+			{
+				int last = Math.min(frameCount, first + wave);
+				pool.invoke(new EncodeTask(inChannel, size, first, last, first, encoded));
+
+				for (int frame = first; frame < last; frame++)		// Written in order, so the index is ascending.
+				{
+					offsets[frame] = out.getFilePointer();
+					out.write(encoded[frame - first]);
+					encoded[frame - first] = null;
+				}
+			}
+
+			long indexOffset = out.getFilePointer();
+			ByteBuffer index = ByteBuffer.allocate(frameCount * 12 + FOOTER_BYTES);
+			for (int frame = 0; frame < frameCount; frame++)
+			{
+				index.putLong(offsets[frame]);
+				index.putInt(frameLength(size, frame));
+			}
+			index.putInt(frameCount).putLong(indexOffset).putInt(MAGIC);
+			out.write(index.array());
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Decompresses a file written by compress(), decoding frames in parallel straight into their place in the output.
+	 * @param inPath Compressed file.
+	 * @param outPath File to write the original bytes to.
+	 * @param pool Pool to decode frames on.
+	 * @throws IOException If either file can't be read or written, or the input is corrupt.
+	 */
+	public static void decompress(String inPath, String outPath, ForkJoinPool pool) throws IOException
+	{
+		FramedFile in = new FramedFile(inPath);
+		RandomAccessFile out = new RandomAccessFile(outPath, "rw");
+		try {
+			long size = 0;
+			for (int frame = 0; frame < in.frameCount(); frame++)
+				size += in.rawLengths[frame];
+
+			out.setLength(size);
+			pool.invoke(new DecodeTask(in, out.getChannel(), 0, in.frameCount()));
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Opens a compressed file for random access to its frames.
+	 * @param path File written by compress().
+	 * @return Reader for the file's frames; close it when done.
+	 * @throws IOException If the file can't be read or has no valid index.
+	 */
+	public static FramedFile open(String path) throws IOException { return new FramedFile(path); }
+
+	/**
+	 * Compressed file with its frame index loaded. Reads are positional, so frames can be decoded from several threads.
+	 * The index is checked when the file is opened: frames must be in order inside the file, and every frame but the last
+	 * must hold exactly BLOCK_SIZE raw bytes (the last 1 to BLOCK_SIZE), since rawOffset() and decoding rely on it.
+	 */
+	public static class FramedFile implements Closeable
+	{
+		private final RandomAccessFile file;
+		private final FileChannel      channel;
+		private final long[]           offsets;		// Offset of every frame, plus the index offset as an end marker.
+		private final int[]            rawLengths;
+
+		private FramedFile(String path) throws IOException
+		{
+			file = new RandomAccessFile(path, "r");
+			try {
+				channel = file.getChannel();
+				long size = channel.size();
+				if (size < 4 + FOOTER_BYTES)
+					throw new IOException("Not a framed Huffman file: " + path);
+
+				ByteBuffer footer = readFully(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+				int frameCount   = footer.getInt();
+				long indexOffset = footer.getLong();
+				if (footer.getInt() != MAGIC || frameCount < 0 || indexOffset < 4
+						|| indexOffset + frameCount * 12L + FOOTER_BYTES != size)
+					throw new IOException("Not a framed Huffman file: " + path);
+
+				ByteBuffer index = readFully(channel, indexOffset, frameCount * 12);
+				offsets    = new long[frameCount + 1];
+				rawLengths = new int[frameCount];
+				for (int frame = 0; frame < frameCount; frame++)
+				{
+					offsets[frame]    = index.getLong();
+					rawLengths[frame] = index.getInt();
+
+					boolean last = frame == frameCount - 1;
+					if (last ? rawLengths[frame] < 1 || rawLengths[frame] > BLOCK_SIZE : rawLengths[frame] != BLOCK_SIZE)
+						throw new IOException("Frame " + frame + " has raw length " + rawLengths[frame] + " in " + path);
+					if (offsets[frame] < (frame == 0 ? 4 : offsets[frame - 1]))
+						throw new IOException("Frame " + frame + " is out of order in " + path);
+				}
+				offsets[frameCount] = indexOffset;
+				if (frameCount > 0 && offsets[frameCount - 1] > indexOffset)
+					throw new IOException("Frame " + (frameCount - 1) + " is out of order in " + path);
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return Number of frames in the file.
+		 */
+		public int frameCount() { return rawLengths.length; }
+
+		/**
+		 * @param frame Frame to look up.
+		 * @return Offset of the frame's first byte in the original (uncompressed) data.
+		 */
+		public long rawOffset(int frame) { return (long) frame * BLOCK_SIZE; }
+
+		/**
+		 * Decodes a single frame without touching any other.
+		 * @param frame Frame to decode.
+		 * @return Original bytes of the frame.
+		 * @throws IOException If the file can't be read or the frame is corrupt.
+		 */
+		public byte[] readFrame(int frame) throws IOException
+		{
+			byte[] raw = new byte[BLOCK_SIZE];
+			int len = decodeFrame(frame, raw);
+			return Arrays.copyOf(raw, len);
+		}
+
+		private int decodeFrame(int frame, byte[] raw) throws IOException
+		{
+			ByteBuffer encoded = readFully(channel, offsets[frame], (int) (offsets[frame + 1] - offsets[frame]));
+			BitReader bits = new BitReader(new ByteArrayInputStream(encoded.array()));
+
+			int len = CODERS.get().decodeBlock(bits, raw, 0);
+			if (len != rawLengths[frame])
+				throw new IOException("Frame " + frame + " is corrupt");
+			return len;
+		}
+
+		@Override
+		public void close() throws IOException { file.close(); }
+	}
+
+	private static int frameLength(long size, int frame)
+	{
+		return (int) Math.min(BLOCK_SIZE, size - (long) frame * BLOCK_SIZE);
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int len) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		readFully(channel, position, buf);
+		buf.flip();
+		return buf;
+	}
+
+	private static void readFully(FileChannel channel, long position, ByteBuffer buf) throws IOException
+	{
+		while (buf.hasRemaining())
+			if (channel.read(buf, position + buf.position()) < 0)
+				throw new EOFException("Unexpected end of file");
+	}
+
+	/**
+	 * Counts the bytes of blocks [from, to) of a file, splitting the range in half until it's a single block.
+	 */
+	static class HistogramTask extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long        size;
+		private final int         from, to;
+
+		HistogramTask(FileChannel channel, long size, int from, int to)
+		{
+			this.channel = channel;
+			this.size    = size;
+			this.from    = from;
+			this.to      = to;
+		}
+
+		@Override
+		protected long[] compute()
+		{
+			if (to - from > 1)
+			{
+				int mid = (from + to) >>> 1;
+				HistogramTask left = new HistogramTask(channel, size, from, mid);
+				left.fork();
+				long[] counts = new HistogramTask(channel, size, mid, to).compute();
+				long[] leftCounts = left.join();
+				for (int i = 0; i < counts.length; i++)
+					counts[i] += leftCounts[i];
+				return counts;
+			}
+
+			long[] counts = new long[HuffmanCodeCompressor.ALPHABET_SIZE];
+			if (from == to)
+				return counts;
+
+			try {
+				ByteBuffer block = readFully(channel, (long) from * BLOCK_SIZE, frameLength(size, from));
+				byte[] bytes = block.array();
+				for (int i = 0; i < block.limit(); i++)
+					counts[bytes[i] & 0xFF]++;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Encodes frames [from, to) into encoded[frame - base].
+	 */
+	private static class EncodeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long        size;
+		private final int         from, to, base;
+		private final byte[][]    encoded;
+
+		private EncodeTask(FileChannel channel, long size, int from, int to, int base, byte[][] encoded)
+		{
+			this.channel = channel;
+			this.size    = size;
+			this.from    = from;
+			this.to      = to;
+			this.base    = base;
+			this.encoded = encoded;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new EncodeTask(channel, size, from, mid, base, encoded),
+						new EncodeTask(channel, size, mid, to, base, encoded));
+				return;
+			}
+
+			try {
+				ByteBuffer raw = readFully(channel, (long) from * BLOCK_SIZE, frameLength(size, from));
+				ByteArrayOutputStream frame = new ByteArrayOutputStream(raw.limit() / 2 + 64);
+				BitWriter bits = new BitWriter(frame);
+
+				CODERS.get().encodeBlock(raw.array(), 0, raw.limit(), bits);
+				bits.flush();
+				encoded[from - base] = frame.toByteArray();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Decodes frames [from, to) and writes each straight to its position in the output file.
+	 */
+	private static class DecodeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final FramedFile  in;
+		private final FileChannel out;
+		private final int         from, to;
+
+		private DecodeTask(FramedFile in, FileChannel out, int from, int to)
+		{
+			this.in   = in;
+			this.out  = out;
+			this.from = from;
+			this.to   = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new DecodeTask(in, out, from, mid), new DecodeTask(in, out, mid, to));
+				return;
+			}
+			if (from == to)
+				return;
+
+			try {
+				byte[] raw = new byte[BLOCK_SIZE];
+				int len = in.decodeFrame(from, raw);
+				ByteBuffer buf = ByteBuffer.wrap(raw, 0, len);
+				long position = in.rawOffset(from);
+				while (buf.hasRemaining())
+					out.write(buf, position + buf.position());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+
+
+	/* Some tests: round trip through the framed format plus a random frame lookup. */
+	public static void main(String[] args) throws IOException
+	{
+		File original = File.createTempFile("huffman", ".raw");
+		File packed   = File.createTempFile("huffman", ".hufp");
+		File restored = File.createTempFile("huffman", ".out");
+		ForkJoinPool pool = new ForkJoinPool();
+
+		Random rand = new Random(1);
+		byte[] data = new byte[5 * BLOCK_SIZE + 12345];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) ('a' + (int) Math.min(25, -Math.log(rand.nextDouble()) * 4));
+		RandomAccessFile raf = new RandomAccessFile(original, "rw");
+		raf.write(data);
+		raf.close();
+
+		long start = System.nanoTime();
+		compress(original.getPath(), packed.getPath(), pool);
+		long mid = System.nanoTime();
+		decompress(packed.getPath(), restored.getPath(), pool);
+		long end = System.nanoTime();
+
+		byte[] back = new byte[(int) restored.length()];
+		raf = new RandomAccessFile(restored, "r");
+		raf.readFully(back);
+		raf.close();
+
+		FramedFile framed = open(packed.getPath());
+		byte[] frame3 = framed.readFrame(3);
+		framed.close();
+		boolean frameOk = Arrays.equals(frame3, Arrays.copyOfRange(data, 3 * BLOCK_SIZE, 4 * BLOCK_SIZE));
+
+		System.out.printf("%d bytes -> %d bytes, compress %.1f ms, decompress %.1f ms, round trip %s, frame 3 %s%n",
+				data.length, packed.length(), (mid - start) / 1e6, (end - mid) / 1e6,
+				Arrays.equals(data, back) ? "OK" : "FAILED", frameOk ? "OK" : "FAILED");
+
+		HuffmanCodeCompressor counter = new HuffmanCodeCompressor();
+		counter.readFileParallel(original.getPath(), pool);
+		counter.constructTree();
+		counter.printSizeOfFile();
+
+		pool.shutdown();
+		original.delete();
+		packed.delete();
+		restored.delete();
+	}
+}
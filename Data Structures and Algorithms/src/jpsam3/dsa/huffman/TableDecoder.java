@@ -0,0 +1,108 @@
+package jpsam3.dsa.huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Two-level lookup table decoder for a CanonicalCode. The next ROOT_BITS bits of input index the root table, which
+ * resolves every code up to ROOT_BITS long in one hit. Longer codes hit a root entry that points at a second-level table
+ * just wide enough for the longest code sharing that root prefix, so no code needs more than two lookups.
+ *
+ * Entries are packed ints: a symbol entry is (symbol << 8 | bits consumed); a link entry has the sign bit set and holds
+ * (offset of the subtable << 8 | subtable width). An entry of 0 is a bit pattern no code starts with.
+ */
+final class TableDecoder
+{
+	static final int ROOT_BITS = 11;
+
+	private final int[] subBits   = new int[1 << ROOT_BITS];	// Width of the subtable hanging off each root slot.
+	private final int[] subOffset = new int[1 << ROOT_BITS];
+	private int[]       table     = new int[1 << ROOT_BITS];	// Root table followed by all subtables.
+
+	TableDecoder(CanonicalCode code)
+	{
+		rebuild(code);
+	}
+
+	/**
+	 * Rebuilds the tables in place for a new code, only growing them when its subtables don't fit, so a decoder can be
+	 * reused for every block of a stream.
+	 */
+	void rebuild(CanonicalCode code)
+	{
+		int rootSize = 1 << ROOT_BITS;
+		int[] lengths = code.lengths;
+		int[] codes   = code.codes;
+
+		Arrays.fill(subBits, 0);
+		for (int s = 0; s < lengths.length; s++)
+		{
+			int extra = lengths[s] - ROOT_BITS;
+			if (extra > 0)
+			{
+				int prefix = codes[s] >>> extra;
+				subBits[prefix] = Math.max(subBits[prefix], extra);
+			}
+		}
+
+		int size = rootSize;
+		for (int prefix = 0; prefix < rootSize; prefix++)
+			if (subBits[prefix] > 0)
+			{
+				subOffset[prefix] = size;
+				size += 1 << subBits[prefix];
+			}
+
+		if (size > table.length)
+			table = new int[size];
+		else
+			Arrays.fill(table, 0, size, 0);
+		for (int prefix = 0; prefix < rootSize; prefix++)
+			if (subBits[prefix] > 0)
+				table[prefix] = 0x80000000 | subOffset[prefix] << 8 | subBits[prefix];
+
+		for (int s = 0; s < lengths.length; s++)
+		{
+			int len = lengths[s];
+			if (len == 0)
+				continue;
+
+			int extra = len - ROOT_BITS;
+			if (extra <= 0)							// Fill every root slot that starts with this code.
+			{
+				int first = codes[s] << -extra;
+				int entry = s << 8 | len;
+				for (int i = 0; i < (1 << -extra); i++)
+					table[first + i] = entry;
+			} else {								// Same again inside the prefix's subtable.
+				int prefix = codes[s] >>> extra;
+				int width  = subBits[prefix];
+				int first  = subOffset[prefix] + ((codes[s] & ((1 << extra) - 1)) << (width - extra));
+				int entry  = s << 8 | extra;
+				for (int i = 0; i < (1 << (width - extra)); i++)
+					table[first + i] = entry;
+			}
+		}
+	}
+
+	/**
+	 * Decodes and consumes one symbol.
+	 * @param bits Stream positioned at the start of a code.
+	 * @return Decoded symbol.
+	 * @throws IOException If the bits don't start with any code, or the stream ends inside a code.
+	 */
+	int decode(BitReader bits) throws IOException
+	{
+		int entry = table[bits.peekBits(ROOT_BITS)];
+		if (entry < 0)
+		{
+			bits.skipBits(ROOT_BITS);
+			entry = table[((entry >>> 8) & 0x7FFFFF) + bits.peekBits(entry & 0xFF)];
+		}
+		if (entry == 0)
+			throw new IOException("Invalid Huffman code in compressed stream");
+
+		bits.skipBits(entry & 0xFF);
+		return entry >>> 8;
+	}
+}
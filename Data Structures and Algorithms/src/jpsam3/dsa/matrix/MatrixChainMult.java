@@ -8,9 +8,12 @@ package jpsam3.dsa.matrix;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 public class MatrixChainMult
 {
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
 	private int[] matrixDimensions;
 
     /**
@@ -49,53 +52,40 @@ public class MatrixChainMult
 	}
 
 	/**
-	 * Brain overheated trying to understand this; consult in-line comments for easier understanding.
+	 * Finds the cheapest order to multiply the chain in with MatrixChainOrder's O(n^3) dynamic programme (long costs,
+	 * long diagonals computed on all cores), and prints its cost and parenthesisation.
 	 *
-	 * Should be O(n^3) time algorithm, which may seem to take more time than the non-dynamic programming version but
-	 * given the constants involved it's faster most of the time to do the calculations to find out the optimal
-	 * multiplication ordering than performing the actual matrix multiplications.
+	 * O(n^3) may seem like a lot next to just multiplying the matrices out, but given the constants involved it's
+	 * faster most of the time to work out the optimal ordering first than to perform the multiplications in a bad one.
+	 * @return The optimal order.
 	 */
-	public void getOptimalMults()
+	public MatrixChainOrder getOptimalMults()
 	{
-		int inputLen = matrixDimensions.length -1;					// No. of ints in the input file.
-		int[][] multTable = new int[inputLen][inputLen];			// Create a table to store multiplication products
-		                                                            // of specified matrices, i.e.:
-		                                                            // multTable[i][n] = # of mults in Ai*Ai+1*...*An
-		for (int i = 0; i < inputLen; i++)
-			multTable[i][i] = 0;
-
-		for (int chainLen = 1; chainLen <= inputLen; chainLen++)	// For each matrix chain variation.
-		{
-			for (int left = 0; left < (inputLen-chainLen); left++)	// For each position that is relevant to current variation of matrix chain (there will be inputLen-chainLen indices to work with in this subsection).
-			{
-				int right = left + chainLen;						// To ensure right index actually starts from the right most value of left.
-				multTable[left][right] = Integer.MAX_VALUE;			// Set the value of the current index to the max value as we can then update it to the min value we get after calculating.
-
-				for (int i = left; i < right; i++)					// For each position between left and right.
-				{
-                    // Our actual calculation to work out the given no. of multiplications for the given matrices.
-					int noOfMults = multTable[left][i] + multTable[i+1][right] + matrixDimensions[left]
-                            * matrixDimensions[i+1] * matrixDimensions[right+1];
+		MatrixChainOrder order = MatrixChainOrder.optimal(matrixDimensions, POOL);
+		printMostOptimal(order);
+		return order;
+	}
 
-					if (noOfMults < multTable[left][right])			// Only add this calculated value to the table if it is more optimal than the previously stored value.
-						multTable[left][right] = noOfMults;
-				}
-			}
-		}
-		printMostOptimal(multTable);
+	/**
+	 * Same as getOptimalMults() but with NearOptimalChainOrder's O(n) heuristic, for chains too long for the DP. The
+	 * order found costs at most about 15% more than the optimal one.
+	 * @return The near-optimal order.
+	 */
+	public MatrixChainOrder getNearOptimalMults()
+	{
+		MatrixChainOrder order = NearOptimalChainOrder.compute(matrixDimensions);
+		printMostOptimal(order);
+		return order;
 	}
 
     /**
-     * Prints out most optimal amount of multiplications using the table of multiplications.
-     * @param table Table to print the values for.
+     * Prints out most optimal amount of multiplications and the order that achieves it.
+     * @param order Order to print.
      */
-	private void printMostOptimal(int[][] table)
+	private void printMostOptimal(MatrixChainOrder order)
 	{
-		int firstRow = 0;
-		int lastCol  = table.length -1;
-        // Print out value in first row, last column (due to the way the table is computed, this will be the min amount
-        // of multiplications).
-		System.out.printf("Minimum amount of multiplications: %d%n", table[firstRow][lastCol]);
+		System.out.printf("Minimum amount of multiplications: %d%n", order.cost());
+		System.out.printf("Order: %s%n", order);
 	}
 
 	public static void main(String[] args)
@@ -104,5 +94,6 @@ public class MatrixChainMult
 
 		test.handleFile("jpsam3/dsa/matrix/matrix.txt");
 		test.getOptimalMults();
+		test.getNearOptimalMults();
 	}
 }
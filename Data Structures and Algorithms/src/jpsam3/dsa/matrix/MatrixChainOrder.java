@@ -0,0 +1,294 @@
+package jpsam3.dsa.matrix;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An order for multiplying out a chain of matrices A1 A2 ... An, as a tree of products, and its cost in scalar
+ * multiplications. Matrix Ai is dims[i - 1] x dims[i], so a chain of n matrices has n + 1 dimensions.
+ *
+ * optimal() finds the cheapest order with the O(n^3) dynamic programme over subchains: cost[i][j] is the cheapest way
+ * to multiply Ai+1 .. Aj+1, built from shorter subchains one anti-diagonal (chain length) at a time, and split[i][j]
+ * the position of the last multiplication, from which the tree is rebuilt. Costs are longs, exact as long as they fit.
+ *
+ * The cost table is one flat array holding every entry twice, at [i][j] and mirrored at [j][i]. The inner loop over
+ * split points k reads cost[i][k] along row i and cost[k + 1][j] as its mirror along row j, so both run through
+ * memory in order instead of one of them striding down a column. Cells on one anti-diagonal depend only on shorter
+ * diagonals, so the parallel version splits each diagonal into runs of neighbouring cells (sharing most of the rows
+ * they read) and computes them as fork-join tasks.
+ */
+public class MatrixChainOrder
+{
+	public static final int MAX_CHAIN = 20000;				// The mirrored table takes 8 n^2 bytes.
+
+	private static final long WORK_PER_TASK = 1 << 16;		// Inner loop steps per fork-join leaf.
+
+	/**
+	 * Product of matrices first .. last (numbered from 0): a single matrix, or left times right.
+	 */
+	public static class Node
+	{
+		public final int  first, last;
+		public final Node left, right;
+		public final long cost;								// Scalar multiplications for this subtree.
+
+		/**
+		 * Leaf for matrix i.
+		 */
+		Node(int i)
+		{
+			first = last = i;
+			left = right = null;
+			cost = 0;
+		}
+
+		/**
+		 * Product of two adjacent subchains.
+		 */
+		Node(int[] dims, Node left, Node right)
+		{
+			if (left.last + 1 != right.first)
+				throw new IllegalArgumentException("Subchains " + left.first + ".." + left.last + " and " + right.first
+						+ ".." + right.last + " are not adjacent");
+			this.first = left.first;
+			this.last = right.last;
+			this.left = left;
+			this.right = right;
+			cost = left.cost + right.cost + (long) dims[first] * dims[left.last + 1] * dims[last + 1];
+		}
+
+		public boolean isLeaf()
+		{
+			return left == null;
+		}
+	}
+
+	private final Node root;
+
+	MatrixChainOrder(Node root)
+	{
+		this.root = root;
+	}
+
+	/**
+	 * @param dims n + 1 dimensions of a chain of n >= 1 matrices.
+	 * @return The cheapest order, computed on the calling thread.
+	 */
+	public static MatrixChainOrder optimal(int[] dims)
+	{
+		return optimal(dims, null);
+	}
+
+	/**
+	 * Same as optimal(int[]), with each anti-diagonal big enough to be worth it computed in parallel on pool (all on
+	 * the calling thread if pool is null).
+	 * @throws IllegalArgumentException If there are no matrices or more than MAX_CHAIN.
+	 */
+	public static MatrixChainOrder optimal(int[] dims, ForkJoinPool pool)
+	{
+		int n = dims.length - 1;
+		if (n < 1 || n > MAX_CHAIN)
+			throw new IllegalArgumentException("Chain of " + n + " matrices; need 1 to " + MAX_CHAIN);
+
+		Table table = new Table(dims);
+		for (int len = 1; len < n; len++)					// Cells (i, i + len); the len 0 diagonal is all 0.
+		{
+			if (pool == null || (long) (n - len) * len < WORK_PER_TASK)
+				table.fill(len, 0, n - len);
+			else
+				pool.invoke(new DiagonalTask(table, len, 0, n - len));
+		}
+		return new MatrixChainOrder(table.tree());
+	}
+
+	/**
+	 * The DP tables for one chain.
+	 */
+	private static class Table
+	{
+		private final int[]  dims;
+		private final int    n;
+		private final long[] cost;			// cost[i * n + j] == cost[j * n + i] = cheapest cost of matrices i .. j.
+		private final int[]  split;			// Packed upper triangle, i < j: left half of i .. j ends at split.
+
+		private Table(int[] dims)
+		{
+			this.dims = dims;
+			n = dims.length - 1;
+			cost = new long[n * n];
+			split = new int[(int) ((long) n * (n - 1) / 2)];
+		}
+
+		private int index(int i, int j)
+		{
+			return (int) ((long) i * (2 * n - i - 1) / 2) + j - i - 1;
+		}
+
+		/**
+		 * Computes cells (i, i + len) for i in [lo, hi).
+		 */
+		private void fill(int len, int lo, int hi)
+		{
+			for (int i = lo; i < hi; i++)
+			{
+				int j = i + len, rowI = i * n, rowJ = j * n;
+				long outer = (long) dims[i] * dims[j + 1];
+				long best = Long.MAX_VALUE;
+				int bestK = i;
+
+				for (int k = i; k < j; k++)
+				{
+					long c = cost[rowI + k] + cost[rowJ + k + 1] + outer * dims[k + 1];
+					if (c < best)
+					{
+						best = c;
+						bestK = k;
+					}
+				}
+
+				cost[rowI + j] = best;
+				cost[rowJ + i] = best;
+				split[index(i, j)] = bestK;
+			}
+		}
+
+		/**
+		 * Rebuilds the tree from the split table with an explicit stack, since a lopsided tree can be n deep.
+		 */
+		private Node tree()
+		{
+			ArrayDeque<int[]> pending = new ArrayDeque<>();	// {first, last, children done ? 1 : 0}
+			ArrayDeque<Node>  built   = new ArrayDeque<>();
+
+			pending.push(new int[] {0, n - 1, 0});
+			while (!pending.isEmpty())
+			{
+				int[] range = pending.pop();
+				if (range[0] == range[1])
+				{
+					built.push(new Node(range[0]));
+				} else if (range[2] == 1) {
+					Node right = built.pop();
+					built.push(new Node(dims, built.pop(), right));
+				} else {
+					int k = split[index(range[0], range[1])];
+					range[2] = 1;
+					pending.push(range);
+					pending.push(new int[] {k + 1, range[1], 0});
+					pending.push(new int[] {range[0], k, 0});
+				}
+			}
+			return built.pop();
+		}
+	}
+
+	/**
+	 * Computes a run of neighbouring cells on one anti-diagonal, splitting it while it holds more than WORK_PER_TASK
+	 * inner loop steps.
+	 */
+	private static class DiagonalTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Table table;
+		private final int len, lo, hi;
+
+		private DiagonalTask(Table table, int len, int lo, int hi)
+		{
+			this.table = table;
+			this.len = len;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (hi - lo > 1 && (long) (hi - lo) * len > WORK_PER_TASK)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new DiagonalTask(table, len, lo, mid), new DiagonalTask(table, len, mid, hi));
+			} else {
+				table.fill(len, lo, hi);
+			}
+		}
+	}
+
+	/**
+	 * @return Scalar multiplications needed to multiply the chain out in this order.
+	 */
+	public long cost()
+	{
+		return root.cost;
+	}
+
+	public Node tree()
+	{
+		return root;
+	}
+
+	/**
+	 * @return The order fully parenthesised, matrices numbered from 1, e.g. "((A1A2)(A3A4))".
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		ArrayDeque<Object> pending = new ArrayDeque<>();	// Nodes still to print and ")"s to close them.
+
+		pending.push(root);
+		while (!pending.isEmpty())
+		{
+			Object next = pending.pop();
+			if (next instanceof String)
+			{
+				out.append(next);
+			} else {
+				Node node = (Node) next;
+				if (node.isLeaf())
+				{
+					out.append('A').append(node.first + 1);
+				} else {
+					out.append('(');
+					pending.push(")");
+					pending.push(node.right);
+					pending.push(node.left);
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	/* Some tests: the matrix.txt chain, then sequential against parallel on a long random chain. Optional argument: n. */
+	public static void main(String[] args)
+	{
+		MatrixChainOrder small = optimal(new int[] {10, 30, 5, 60, 80});
+		System.out.printf("10 30 5 60 80: %d multiplications, %s%n", small.cost(), small);
+
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		Random rand = new Random(24);
+		int[] dims = new int[n + 1];
+		for (int i = 0; i <= n; i++)
+			dims[i] = 1 + rand.nextInt(4096);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		optimal(Arrays.copyOf(dims, 200), pool);		// Warm up.
+
+		long start = System.nanoTime();
+		MatrixChainOrder sequential = optimal(dims);
+		long sequentialTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		MatrixChainOrder parallel = optimal(dims, pool);
+		long parallelTime = System.nanoTime() - start;
+
+		System.out.printf("%d matrices: cost %d, sequential %.1f ms, parallel %.1f ms on %d threads, %s%n", n,
+				sequential.cost(), sequentialTime / 1e6, parallelTime / 1e6, pool.getParallelism(),
+				sequential.cost() == parallel.cost() && sequential.toString().equals(parallel.toString())
+						? "matches" : "MISMATCH");
+		pool.shutdown();
+	}
+}
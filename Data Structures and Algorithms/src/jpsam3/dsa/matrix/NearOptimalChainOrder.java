@@ -0,0 +1,174 @@
+package jpsam3.dsa.matrix;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * O(n) near-optimal matrix chain order, for chains too long for MatrixChainOrder's O(n^3) dynamic programme.
+ *
+ * A chain with dimensions d0 .. dn is a convex polygon with vertices V0 .. Vn weighted by the dimensions. Every
+ * triangulation of it is a multiplication order: the triangle on side (V0, Vn) is the last product, and a triangle
+ * (Vi, Vj, Vk) costs di * dj * dk (T. C. Hu, M. T. Shing, "Computation of Matrix Chain Products", SIAM J. Comput. 1982).
+ * Chin's heuristic (F. Y. Chin, "An O(n) Algorithm for Determining a Near-Optimal Computation Order of Matrix Chain
+ * Products", CACM 1978), as later refined by Hu and Shing, starts from the fan of triangles around the lightest vertex
+ * V1, which is optimal when no other weight stands out, and cuts off a heavy vertex Vt between neighbours Va and Vc
+ * wherever the triangle (Va, Vt, Vc) plus (V1, Va, Vc) is cheaper than (V1, Va, Vt) plus (V1, Vt, Vc), that is where
+ * 1/wa + 1/wc >= 1/wt + 1/w1. One scan round the polygon with a stack finds all such cuts, each vertex being pushed and
+ * popped at most once; what is left on the stack is fanned from V1.
+ *
+ * The result is never better than optimal and, by Hu and Shing's analysis, never more than about 15% worse.
+ */
+public class NearOptimalChainOrder
+{
+	private static final int REPEATS = 5;				// Timings in main() are the best of this many.
+
+	/**
+	 * @param dims n + 1 dimensions of a chain of n >= 1 matrices.
+	 * @return A near-optimal order, in O(n) time.
+	 * @throws IllegalArgumentException If there are no matrices.
+	 */
+	public static MatrixChainOrder compute(int[] dims)
+	{
+		int vertices = dims.length, n = vertices - 1;
+		if (n < 1)
+			throw new IllegalArgumentException("Chain of " + n + " matrices; need at least 1");
+
+		int lightest = 0;
+		for (int v = 1; v < vertices; v++)
+			if (dims[v] < dims[lightest])
+				lightest = v;
+		double inverseLightest = 1.0 / dims[lightest];
+
+		// Triangle (a, b, c) with a < b < c is stored as side (a, c) -> b: the product over a .. c splits at b.
+		HashMap<Long, Integer> apex = new HashMap<>(2 * n);
+		int[] stack = new int[vertices];
+		int top = 0;
+
+		stack[top++] = lightest;
+		for (int i = 1; i < vertices; i++)					// Round the polygon from the lightest vertex.
+		{
+			int c = (lightest + i) % vertices;
+			while (top >= 3)								// Never cut V1 itself, at stack[0].
+			{
+				int t = stack[top - 1], a = stack[top - 2];
+				if (1.0 / dims[a] + 1.0 / dims[c] < 1.0 / dims[t] + inverseLightest)
+					break;
+				addTriangle(apex, vertices, a, t, c);
+				top--;
+			}
+			stack[top++] = c;
+		}
+		for (int i = 1; i + 1 < top; i++)
+			addTriangle(apex, vertices, lightest, stack[i], stack[i + 1]);
+
+		return new MatrixChainOrder(tree(dims, apex));
+	}
+
+	private static void addTriangle(HashMap<Long, Integer> apex, int vertices, int x, int y, int z)
+	{
+		int a = Math.min(x, Math.min(y, z)), c = Math.max(x, Math.max(y, z));
+		apex.put((long) a * vertices + c, x + y + z - a - c);
+	}
+
+	/**
+	 * Turns the triangulation into a product tree, from side (V0, Vn) down, with an explicit stack.
+	 */
+	private static MatrixChainOrder.Node tree(int[] dims, HashMap<Long, Integer> apex)
+	{
+		int vertices = dims.length;
+		ArrayDeque<int[]> pending = new ArrayDeque<>();		// {side start, side end, children done ? 1 : 0}
+		ArrayDeque<MatrixChainOrder.Node> built = new ArrayDeque<>();
+
+		pending.push(new int[] {0, vertices - 1, 0});
+		while (!pending.isEmpty())
+		{
+			int[] side = pending.pop();
+			if (side[1] == side[0] + 1)						// A polygon edge: matrix side[0] on its own.
+			{
+				built.push(new MatrixChainOrder.Node(side[0]));
+			} else if (side[2] == 1) {
+				MatrixChainOrder.Node right = built.pop();
+				built.push(new MatrixChainOrder.Node(dims, built.pop(), right));
+			} else {
+				int b = apex.get((long) side[0] * vertices + side[1]);
+				side[2] = 1;
+				pending.push(side);
+				pending.push(new int[] {b, side[1], 0});
+				pending.push(new int[] {side[0], b, 0});
+			}
+		}
+		return built.pop();
+	}
+
+	/* Some tests: checks against the DP on random chains, then times both (warmed up, best of REPEATS) to show the crossover. */
+	public static void main(String[] args)
+	{
+		Random rand = new Random(25);
+		double worst = 1, total = 0;
+		int trials = 2000, exact = 0;
+		for (int t = 0; t < trials; t++)
+		{
+			int[] dims = randomDims(rand, 1 + rand.nextInt(60), t % 2 == 0 ? 1 : 1000, t % 2 == 0 ? 100 : 4096);
+			long optimal = MatrixChainOrder.optimal(dims).cost();
+			long near = compute(dims).cost();
+			if (near < optimal)
+				System.out.printf("BELOW OPTIMAL: %d < %d%n", near, optimal);
+			double ratio = optimal == 0 ? 1 : (double) near / optimal;
+			worst = Math.max(worst, ratio);
+			total += ratio;
+			if (near == optimal)
+				exact++;
+		}
+		System.out.printf("%d random chains: %d optimal, mean cost ratio %.4f, worst %.4f%n%n", trials, exact,
+				total / trials, worst);
+
+		for (int i = 0; i < 20; i++)						// Warm up both before timing anything.
+			bestTime(randomDims(rand, 300, 1000, 4096), i % 2 == 0);
+
+		System.out.printf("%9s %14s %14s %10s%n", "matrices", "DP", "near-optimal", "ratio");
+		for (int n : new int[] {2, 5, 10, 20, 50, 100, 300, 1000, 2000, 100000, 1000000})
+		{
+			int[] dims = randomDims(rand, n, 1000, 4096);
+			boolean dp = n <= 2000;
+			double dpTime = dp ? bestTime(dims, true) : 0;
+			double nearTime = bestTime(dims, false);
+
+			System.out.printf("%9d %11s ms %11.4f ms %10s%n", n, dp ? String.format("%.4f", dpTime / 1e6) : "-",
+					nearTime / 1e6, dp ? String.format("%.4f", (double) compute(dims).cost()
+							/ MatrixChainOrder.optimal(dims).cost()) : "-");
+		}
+	}
+
+	/**
+	 * @return Best time in nanoseconds per call of the DP (or of compute()) on dims over REPEATS measurements, each
+	 * repeating the call until it has taken at least a millisecond so that short chains aren't lost in timer noise.
+	 */
+	private static double bestTime(int[] dims, boolean dp)
+	{
+		double best = Double.MAX_VALUE;
+		long sink = 0;
+		for (int i = 0; i < REPEATS; i++)
+		{
+			int calls = 0;
+			long start = System.nanoTime(), elapsed;
+			do
+			{
+				sink += (dp ? MatrixChainOrder.optimal(dims) : compute(dims)).cost();
+				calls++;
+			} while ((elapsed = System.nanoTime() - start) < 1000000);
+			best = Math.min(best, (double) elapsed / calls);
+		}
+		if (sink == 42)										// Keeps sink alive.
+			System.out.print("");
+		return best;
+	}
+
+	private static int[] randomDims(Random rand, int n, int minDim, int maxDim)
+	{
+		int[] dims = new int[n + 1];
+		for (int i = 0; i <= n; i++)
+			dims[i] = minDim + rand.nextInt(maxDim - minDim + 1);
+		return dims;
+	}
+}